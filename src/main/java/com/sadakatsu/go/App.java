@@ -1,7 +1,5 @@
 package com.sadakatsu.go;
 
-import static com.sadakatsu.go.domain.intersection.Empty.EMPTY;
-
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -40,11 +38,13 @@ public class App {
     }
     
     private static List<Move> getLegalMoves( Game game ) {
-        List<Move> moves = new ArrayList<>();
-        for (Coordinate coordinate : Coordinate.iterateOverBoard()) {
-            if (EMPTY == game.get(coordinate)) {
-                moves.add(coordinate);
-            }
+        int dimension = game.getDimension();
+        int[] indices = new int[dimension * dimension];
+        int count = game.getLegalMoveIndices(indices);
+        
+        List<Move> moves = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            moves.add(Coordinate.fromIndex(indices[i], dimension));
         }
         return moves;
     }
@@ -112,12 +112,10 @@ public class PlayCompletedGame {
         long start = System.nanoTime();
         
         Set<Group> deadGroups = new HashSet<>();
-        for (Group group : game.getGroupsOfStones()) {
-            for (Coordinate coordinate : DEAD_GROUP_INDICATORS) {
-                if (group.members.contains(coordinate)) {
-                    deadGroups.add(group);
-                    break;
-                }
+        for (Coordinate coordinate : DEAD_GROUP_INDICATORS) {
+            Group group = game.getGroupAt(coordinate);
+            if (group.type == Stone.BLACK || group.type == Stone.WHITE) {
+                deadGroups.add(group);
             }
         }
         
@@ -138,24 +136,20 @@ public class PlayCompletedGame {
             for (int column = 1; column <= 19; ++column) {
                 Coordinate coordinate = Coordinate.get(column, row);
                 int score = 0;
-                for (Group group : groups) {
-                    if (group.members.contains(coordinate)) {
-                        if (group.type == Stone.BLACK) {
-                            score = 1;
-                        } else if (group.type == Stone.WHITE) {
-                            score = -1;
-                        } else if (group.type.countsAsLiberty()) {
-                            if (group.bordersBlack) {
-                                ++score;
-                            }
-                            if (group.bordersWhite) {
-                                --score;
-                            }
-                        } else {
-                            score = Integer.MIN_VALUE;
-                        }
-                        break;
+                Group group = game.getGroupAt(coordinate);
+                if (group.type == Stone.BLACK) {
+                    score = 1;
+                } else if (group.type == Stone.WHITE) {
+                    score = -1;
+                } else if (group.type.countsAsLiberty()) {
+                    if (group.bordersBlack) {
+                        ++score;
+                    }
+                    if (group.bordersWhite) {
+                        --score;
                     }
+                } else {
+                    score = Integer.MIN_VALUE;
                 }
                 
                 if (score == 1) {
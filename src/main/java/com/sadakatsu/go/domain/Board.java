@@ -9,7 +9,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import com.sadakatsu.go.domain.intersection.Intersection;
@@ -70,16 +69,29 @@ public class Board {
 		}
 	}
 	
-    private static final int POSITION_BITS_PER_INTERSECTION = 2;
     private static final int SITUATION_BITS_PER_INTERSECTION = 3;
-    
-    // Originally, I had used Long.SIZE / BITS_PER_INTERSECTION, but allowing the sign bit to be used for comparing
-    // positions caused a problem where different positions were evaluated as equal.  Removing the sign bit appears to
-    // have fixed this issue.
-    private static final int POSITION_INTERSECTIONS_PER_LONG = (Long.SIZE - 1) / POSITION_BITS_PER_INTERSECTION;
     private static final int SITUATION_INTERSECTIONS_PER_LONG = (Long.SIZE - 1) / SITUATION_BITS_PER_INTERSECTION;
     
     private static final int MAX_DIMENSION = 19;
+    
+    // A CHUNKED Board splits its cells into blocks of CHUNK_SIZE; a FLAT Board uses one block large enough for a padded
+    // 19x19 board.  Ownership of the blocks is tracked in a single long, so there may be at most 64 of them.
+    static final int CHUNK_SIZE = 32;
+    private static final int CHUNK_SHIFT = Integer.numberOfTrailingZeros(CHUNK_SIZE);
+    private static final int FLAT_SHIFT = 9;
+    
+    // Each intersection is stored as a byte code instead of an Intersection reference.  The codes double as indices
+    // into RECOGNIZED_INTERSECTION_VALUES so that get() can translate them back without any branching.
+    static final byte EMPTY_CODE = 0;
+    static final byte BLACK_CODE = 1;
+    static final byte WHITE_CODE = 2;
+    static final byte TEMPORARILY_UNPLAYABLE_CODE = 3;
+    static final byte PERMANENTLY_UNPLAYABLE_CODE = 4;
+    
+    // OFF_BOARD_CODE only ever appears in the border ring of a PADDED Board.  It is never stored through setCode() and
+    // never decoded, so it has no Intersection counterpart.
+    static final byte OFF_BOARD_CODE = 5;
+    
     private static final Intersection[] RECOGNIZED_INTERSECTION_VALUES = {
         EMPTY,
         BLACK,
@@ -88,17 +100,114 @@ public class Board {
         PERMANENTLY_UNPLAYABLE
     };
     
+    // ZOBRIST_KEYS[code][index] is XORed into a Board's key whenever that code enters or leaves that index.  The rows
+    // for the two liberty codes are left as zeroes so that, like isSamePositionAs(), the key ignores the difference
+    // between EMPTY and TEMPORARILY_UNPLAYABLE.  Each dimension starts from its own key so that empty boards of
+    // different sizes do not collide.
+    private static final long[][] ZOBRIST_KEYS = new long[RECOGNIZED_INTERSECTION_VALUES.length][];
+    private static final long[] DIMENSION_KEYS = new long[MAX_DIMENSION + 1];
+    static {
+        long seed = 0x5ADA4A75560L;
+        for (int dimension = 1; dimension <= MAX_DIMENSION; ++dimension) {
+            seed += 0x9E3779B97F4A7C15L;
+            DIMENSION_KEYS[dimension] = mix(seed);
+        }
+        
+        for (byte code = 0; code < ZOBRIST_KEYS.length; ++code) {
+            ZOBRIST_KEYS[code] = new long[MAX_DIMENSION * MAX_DIMENSION];
+            if (!countsAsLiberty(code)) {
+                for (int index = 0; index < ZOBRIST_KEYS[code].length; ++index) {
+                    seed += 0x9E3779B97F4A7C15L;
+                    ZOBRIST_KEYS[code][index] = mix(seed);
+                }
+            }
+        }
+    }
+    
+    // This is the SplitMix64 finalizer, which is plenty for spreading the sequential seeds into independent keys.
+    private static long mix( long value ) {
+        value = (value ^ value >>> 30) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ value >>> 27) * 0x94D049BB133111EBL;
+        return value ^ value >>> 31;
+    }
+    
+    // CELLS[layout][dimension][index] is the cell that holds the intersection with the row-major index.  Cells number
+    // the Board's storage consecutively across its chunks.  COMPACT maps every index to itself; PADDED skips the
+    // border ring.
+    private static final int[][][] CELLS = new int[BoardLayout.values().length][MAX_DIMENSION + 1][];
+    static {
+        for (int dimension = 1; dimension <= MAX_DIMENSION; ++dimension) {
+            int[] compact = new int[dimension * dimension];
+            int[] padded = new int[dimension * dimension];
+            for (int index = 0; index < compact.length; ++index) {
+                compact[index] = index;
+                padded[index] = (index / dimension + 1) * (dimension + 2) + index % dimension + 1;
+            }
+            CELLS[BoardLayout.COMPACT.ordinal()][dimension] = compact;
+            CELLS[BoardLayout.PADDED.ordinal()][dimension] = padded;
+        }
+    }
+    
+    static boolean countsAsLiberty( byte code ) {
+        return code == EMPTY_CODE || code == TEMPORARILY_UNPLAYABLE_CODE;
+    }
+    
+    static byte encode( Intersection intersection ) {
+        byte code = -1;
+        for (byte i = 0; code < 0 && i < RECOGNIZED_INTERSECTION_VALUES.length; ++i) {
+            if (RECOGNIZED_INTERSECTION_VALUES[i] == intersection) {
+                code = i;
+            }
+        }
+        return code;
+    }
+    
+    static Intersection decode( byte code ) {
+        return RECOGNIZED_INTERSECTION_VALUES[code];
+    }
+    
+    private final BitBoard bitBoard;
+    private final BoardLayout layout;
+    private final int[] cells;
+    private final int stride;
     private final int dimension;
-    private final long[] position;
-    private final Intersection[] intersections;
+    private final BoardStorage storage;
+    private final int chunkShift;
+    private final int chunkMask;
+    private final byte[][] chunks;
     
+    // Bit i is set when chunks[i] belongs to this Board alone and may be written in place.
+    private long ownedChunks;
+    private Chains chains;
+    private boolean ownsChains;
+    
+    // Set by the copy constructor when a copy starts sharing this Board's chunks and chains.  It is the only field of
+    // the source that copying writes, because immutable Boards such as the ones inside Game states are copied from
+    // many threads at once.  The source gives up its ownership the next time it writes, which only a Board with a
+    // single owner ever does.  Copying a Board whose flag is already set writes nothing at all.
+    private volatile boolean copied;
     private int nonEmptyIntersections;
+    private long zobrist;
     
     public Board() {
         this(MAX_DIMENSION);
     }
     
     public Board( int dimension ) {
+        this(dimension, BoardLayout.COMPACT);
+    }
+    
+    public Board( int dimension, BoardLayout layout ) {
+        this(dimension, layout, BoardStorage.FLAT);
+    }
+    
+    public Board( int dimension, BoardLayout layout, BoardStorage storage ) {
+        if (layout == null) {
+            throw new IllegalArgumentException("The layout cannot be null.");
+        }
+        if (storage == null) {
+            throw new IllegalArgumentException("The storage cannot be null.");
+        }
         if (dimension < 1 || dimension > MAX_DIMENSION) {
             String message = String.format(
                 "Received the illegal dimension %d.  Expected 1 <= dimension <= 19.",
@@ -107,25 +216,38 @@ public class Board {
             throw new IllegalArgumentException(message);
         }
         
-        int intersections = dimension * dimension;
-        
+        this.bitBoard = new BitBoard(dimension);
+        this.layout = layout;
+        this.cells = CELLS[layout.ordinal()][dimension];
         this.dimension = dimension;
-        this.intersections = new Intersection[intersections];
-        for (int i = 0; i < this.intersections.length; ++i) {
-            this.intersections[i] = EMPTY;
+        
+        byte[] intersections;
+        if (layout == BoardLayout.PADDED) {
+            this.stride = dimension + 2;
+            intersections = new byte[stride * stride];
+            Arrays.fill(intersections, OFF_BOARD_CODE);
+            for (int cell : cells) {
+                intersections[cell] = EMPTY_CODE;
+            }
+        } else {
+            this.stride = dimension;
+            intersections = new byte[dimension * dimension];
         }
         
-        int bitMaskLength = getBitMaskLength(intersections);
-        this.position = new long[bitMaskLength];
-        this.nonEmptyIntersections = 0;
-    }
-    
-    private int getBitMaskLength( int intersections ) {
-        int length = intersections / POSITION_INTERSECTIONS_PER_LONG;
-        if (intersections % POSITION_INTERSECTIONS_PER_LONG > 0) {
-            ++length;
+        this.storage = storage;
+        this.chunkShift = storage == BoardStorage.CHUNKED ? CHUNK_SHIFT : FLAT_SHIFT;
+        this.chunkMask = (1 << chunkShift) - 1;
+        this.chunks = new byte[(intersections.length + chunkMask) >>> chunkShift][];
+        for (int i = 0; i < chunks.length; ++i) {
+            int from = i << chunkShift;
+            chunks[i] = Arrays.copyOfRange(intersections, from, Math.min(from + chunkMask + 1, intersections.length));
         }
-        return length;
+        this.ownedChunks = -1L;
+        this.chains = new Chains(dimension);
+        this.ownsChains = true;
+        
+        this.nonEmptyIntersections = 0;
+        this.zobrist = DIMENSION_KEYS[dimension];
     }
     
     public Board( Board source ) {
@@ -133,16 +255,35 @@ public class Board {
             throw new IllegalArgumentException("The source cannot be null.");
         }
         
+        this.bitBoard = new BitBoard(source.bitBoard);
+        this.layout = source.layout;
+        this.cells = source.cells;
+        this.stride = source.stride;
         this.dimension = source.dimension;
-        this.intersections = Arrays.copyOf(source.intersections, source.intersections.length);
-        this.position = Arrays.copyOf(source.position, source.position.length);
+        this.storage = source.storage;
+        this.chunkShift = source.chunkShift;
+        this.chunkMask = source.chunkMask;
+        
+        // Both Boards now share every chunk, so neither may write to one in place until it has taken its own copy.
+        this.chunks = Arrays.copyOf(source.chunks, source.chunks.length);
+        this.ownedChunks = 0L;
+        this.chains = source.chains;
+        this.ownsChains = false;
+        if (!source.copied) {
+            source.copied = true;
+        }
+        
         this.nonEmptyIntersections = source.nonEmptyIntersections;
+        this.zobrist = source.zobrist;
     }
     
     public Intersection get( Coordinate coordinate ) {
+        return decode(getCode(indexOf(coordinate)));
+    }
+    
+    int indexOf( Coordinate coordinate ) {
         validateCoordinate(coordinate);
-        int index = convertCoordinateToIndex(coordinate);
-        return intersections[index];
+        return convertCoordinateToIndex(coordinate);
     }
     
     private void validateCoordinate( Coordinate coordinate ) {
@@ -157,44 +298,22 @@ public class Board {
     }
     
     private int convertCoordinateToIndex( Coordinate coordinate ) {
-        return (coordinate.getRow() - 1) * dimension + coordinate.getColumn() - 1;
+        return coordinate.toIndex(dimension);
     }
     
-    public void set( Coordinate coordinate, Intersection intersection ) {
-        validateCoordinate(coordinate);
-        validateIntersection(intersection);
-        int index = convertCoordinateToIndex(coordinate);
-        
-        int positionIndex = index / POSITION_INTERSECTIONS_PER_LONG;
-        int offset = (index % POSITION_INTERSECTIONS_PER_LONG) * POSITION_BITS_PER_INTERSECTION;
-        Intersection previousValue = intersections[index];
-        
-        if (!previousValue.countsAsLiberty()) {
-            position[positionIndex] -= (long) getIntersectionHash(previousValue) << offset;
-            --nonEmptyIntersections;
-        }
-        if (!intersection.countsAsLiberty()) {
-            position[positionIndex] += (long) getIntersectionHash(intersection) << offset;
-            ++nonEmptyIntersections;
-        }
-        
-        intersections[index] = intersection;
+    Coordinate coordinateAt( int index ) {
+        return Coordinate.fromIndex(index, dimension);
     }
     
-    private int getIntersectionHash( Intersection intersection ) {
-        int hash = 0;
-        if (intersection == BLACK) {
-            hash = 1;
-        } else if (intersection == WHITE) {
-            hash = 2;
-        } else if (intersection == PERMANENTLY_UNPLAYABLE) {
-            hash = 3;
-        }
-        return hash;
+    public void set( Coordinate coordinate, Intersection intersection ) {
+        validateCoordinate(coordinate);
+        byte code = encode(intersection);
+        validateIntersection(intersection, code);
+        setCode(convertCoordinateToIndex(coordinate), code);
     }
     
-    private void validateIntersection( Intersection intersection ) {
-        if (!ArrayUtils.contains(RECOGNIZED_INTERSECTION_VALUES, intersection)) {
+    private void validateIntersection( Intersection intersection, byte code ) {
+        if (code < 0) {
             String message = String.format(
                 "Received an unrecoginzed Intersection %s.  It should be one of Empty.EMPTY, Stone.BLACK, " +
                 "Stone.WHITE, TemporarilyUnplayable.TEMPORARILY_UNPLAYABLE, or PermanentlyUnplayable." +
@@ -205,15 +324,191 @@ public class Board {
         }
     }
     
+    byte getCode( int index ) {
+        return getCell(cells[index]);
+    }
+    
+    private byte getCell( int cell ) {
+        return chunks[cell >>> chunkShift][cell & chunkMask];
+    }
+    
+    // Reports whether any neighbor of the intersection at index counts as a liberty.  A PADDED Board checks the four
+    // fixed offsets and lets the OFF_BOARD_CODE border fail the test; a COMPACT Board consults the neighbor table.
+    boolean isAdjacentToLiberty( int index ) {
+        boolean result = false;
+        if (layout == BoardLayout.PADDED) {
+            int cell = cells[index];
+            result =
+                countsAsLiberty(getCell(cell - stride)) ||
+                countsAsLiberty(getCell(cell + 1)) ||
+                countsAsLiberty(getCell(cell + stride)) ||
+                countsAsLiberty(getCell(cell - 1));
+        } else {
+            for (int neighbor : Coordinate.getNeighborTable(dimension)[index]) {
+                if (countsAsLiberty(getCode(neighbor))) {
+                    result = true;
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+    
+    // setCode() trusts that index is on the board and that code is one of the *_CODE constants; set() is the validated
+    // entry point.
+    void setCode( int index, byte code ) {
+        byte previousCode = writeCode(index, code);
+        if (Chains.isStone(code) && countsAsLiberty(previousCode)) {
+            getOwnChains().place(this, index);
+        } else if (changesChains(previousCode, code)) {
+            getOwnChains().repair(this, index);
+        }
+    }
+    
+    // Writing every code before touching the chains lets a whole captured chain be removed or restored with a single
+    // repair instead of one per stone.
+    void setCodes( long[] indices, byte code ) {
+        boolean chainsChanged = false;
+        for (int index = BitBoard.next(indices, 0); index >= 0; index = BitBoard.next(indices, index + 1)) {
+            byte previousCode = writeCode(index, code);
+            chainsChanged |= changesChains(previousCode, code);
+        }
+        if (chainsChanged) {
+            getOwnChains().repair(this, indices);
+        }
+    }
+    
+    // Updates the code, the bitsets and the Zobrist key, but not the chains, and returns the code it replaced.  Writing
+    // the code that is already there changes nothing, so it never takes a copy of a shared chunk.
+    private byte writeCode( int index, byte code ) {
+        int cell = cells[index];
+        int chunk = cell >>> chunkShift;
+        byte previousCode = chunks[chunk][cell & chunkMask];
+        
+        if (previousCode != code) {
+            releaseIfCopied();
+            if (!countsAsLiberty(previousCode)) {
+                --nonEmptyIntersections;
+            }
+            if (!countsAsLiberty(code)) {
+                ++nonEmptyIntersections;
+            }
+            
+            if ((ownedChunks & 1L << chunk) == 0) {
+                chunks[chunk] = Arrays.copyOf(chunks[chunk], chunks[chunk].length);
+                ownedChunks |= 1L << chunk;
+            }
+            
+            bitBoard.update(index, previousCode, code);
+            zobrist ^= ZOBRIST_KEYS[previousCode][index] ^ ZOBRIST_KEYS[code][index];
+            chunks[chunk][cell & chunkMask] = code;
+        }
+        return previousCode;
+    }
+    
+    private void releaseIfCopied() {
+        if (copied) {
+            ownedChunks = 0L;
+            ownsChains = false;
+            copied = false;
+        }
+    }
+    
+    // Swapping one liberty code for the other, as marking a Board does, leaves every chain as it was.
+    private static boolean changesChains( byte previousCode, byte code ) {
+        return
+            previousCode != code &&
+            (
+                Chains.isStone(previousCode) ||
+                Chains.isStone(code) ||
+                countsAsLiberty(previousCode) != countsAsLiberty(code)
+            );
+    }
+    
+    private Chains getOwnChains() {
+        releaseIfCopied();
+        if (!ownsChains) {
+            chains = new Chains(chains);
+            ownsChains = true;
+        }
+        return chains;
+    }
+    
+    /**
+     * @return the root of the chain holding the stone at index, or -1 if there is no stone there.  Two stones belong to
+     * the same chain exactly when they have the same root.
+     */
+    int getChainRoot( int index ) {
+        return chains.getRoot(index);
+    }
+    
+    // The remaining chain queries expect index to hold a stone.  Each costs a couple of array reads plus at most a pass
+    // over the chain's liberty set.
+    int getChainSize( int index ) {
+        return chains.getSize(index);
+    }
+    
+    int getChainLiberties( int index ) {
+        return chains.libertyCount(index);
+    }
+    
+    boolean isChainInAtari( int index ) {
+        return chains.isInAtari(index);
+    }
+    
+    // Returns the only liberty of the chain holding the stone at index, or -1 if it has none or more than one.
+    int getChainLastLiberty( int index ) {
+        return chains.lastLiberty(index);
+    }
+    
+    // Adds every liberty of the chain holding the stone at index to set.
+    void addChainLibertiesTo( int index, long[] set ) {
+        chains.addLiberties(index, set);
+    }
+    
+    // Adds every stone of the chain holding the stone at index to set.
+    void addChainTo( int index, long[] set ) {
+        chains.addStones(index, set);
+    }
+    
+    BitBoard getBitBoard() {
+        return bitBoard;
+    }
+    
     public int getDimension() {
         return dimension;
     }
     
+    public BoardLayout getLayout() {
+        return layout;
+    }
+    
+    public BoardStorage getStorage() {
+        return storage;
+    }
+    
     public boolean isSamePositionAs( Board that ) {
         if (that == null) {
             throw new IllegalArgumentException("isSamePositionAs() requires a non-null Board argument.");
         }
-        return this.dimension == that.dimension && Arrays.equals(this.position, that.position);
+        return
+            this.dimension == that.dimension &&
+            this.zobrist == that.zobrist &&
+            this.bitBoard.isSamePositionAs(that.bitBoard);
+    }
+    
+    /**
+     * @return a 64-bit Zobrist key for the stones on this Board.  It is maintained incrementally by every set(), so
+     * reading it is free.  Boards for which isSamePositionAs() returns true always have the same key, which makes it
+     * suitable for keying superko histories, transposition tables and caches.
+     */
+    public long zobrist() {
+        return zobrist;
+    }
+    
+    // Returns the key that zobrist() would return after setCode(index, code), without changing the Board.
+    long zobristAfterSetting( int index, byte code ) {
+        return zobrist ^ ZOBRIST_KEYS[getCode(index)][index] ^ ZOBRIST_KEYS[code][index];
     }
     
     public int countNonEmptyIntersections() {
@@ -225,65 +520,43 @@ public class Board {
         boolean result = this == other;
         if (!result && other != null && Board.class.equals(other.getClass())) {
             Board that = (Board) other;
-            result = this.dimension == that.dimension && Arrays.equals(this.intersections, that.intersections);
+            result = this.dimension == that.dimension && hasSameCodesAs(that);
         }
         return result;
     }
     
-    @Override
-    public int hashCode() {
-        int hash = 0;
-        for (int i = intersections.length - 1; i >= 0; --i) {
-            Intersection value = intersections[i];
-            
-            int contribution = -1;
-            if (EMPTY.equals(value)) {
-                contribution = 0;
-            } else if (BLACK.equals(value)) {
-                contribution = 1;
-            } else if (WHITE.equals(value)) {
-                contribution = 2;
-            } else if (TEMPORARILY_UNPLAYABLE.equals(value)) {
-                contribution = 3;
-            } else if (PERMANENTLY_UNPLAYABLE.equals(value)) {
-                contribution = 4;
-            } else {
-                errorOverIllegalIntersectionValue(i, value);
-            }
-            
-            hash = hash * 5 + contribution;
+    // The two Boards may use different layouts, so the comparison goes through the row-major indices.
+    private boolean hasSameCodesAs( Board that ) {
+        boolean result = true;
+        for (int index = 0; result && index < cells.length; ++index) {
+            result = this.getCode(index) == that.getCode(index);
         }
-        return hash;
+        return result;
     }
     
-    private void errorOverIllegalIntersectionValue( int index, Intersection value ) {
-        String message = String.format(
-            "%s somehow has an unpermitted Intersection value at index %d: %s.",
-            this,
-            index,
-            value
-        );
-        throw new IllegalStateException(message);
+    @Override
+    public int hashCode() {
+        return (int) (zobrist ^ zobrist >>> 32);
     }
     
     @Override
     public String toString() {
         String representation = null;
         
-        if (dimension == 1 && EMPTY.equals(intersections[0])) {
+        if (dimension == 1 && getCode(0) == EMPTY_CODE) {
             representation = "∙";
         } else {
             StringBuilder builder = new StringBuilder();
-            for (int i = 0; i < intersections.length; ++i) {
-                Intersection value = intersections[i];
-                if (EMPTY.equals(value)) {
+            for (int i = 0; i < cells.length; ++i) {
+                byte value = getCode(i);
+                if (value == EMPTY_CODE) {
                     if (i == 0) {
                         builder.append("┌");
                     } else if (i == dimension - 1) {
                         builder.append("┐");
                     } else if (i == dimension * (dimension - 1)) {
                         builder.append("└");
-                    } else if (i == intersections.length - 1) {
+                    } else if (i == cells.length - 1) {
                         builder.append("┘");
                     } else if (i < dimension) {
                         builder.append("┬");
@@ -296,18 +569,16 @@ public class Board {
                     } else {
                         builder.append("┼");
                     }
-                } else if (BLACK.equals(value)) {
+                } else if (value == BLACK_CODE) {
                     builder.append("●");
-                } else if (WHITE.equals(value)) {
+                } else if (value == WHITE_CODE) {
                     builder.append("○");
-                } else if (TEMPORARILY_UNPLAYABLE.equals(value)) {
+                } else if (value == TEMPORARILY_UNPLAYABLE_CODE) {
                     // builder.append("劫"); // this character is not rendered as fixed-width
                     // builder.append("◊");
                     builder.append("∙");
-                } else if (PERMANENTLY_UNPLAYABLE.equals(value)) {
-                    builder.append("X");
                 } else {
-                    errorOverIllegalIntersectionValue(i, value);
+                    builder.append("X");
                 }
                 
                 if ((i + 1) % dimension == 0) {
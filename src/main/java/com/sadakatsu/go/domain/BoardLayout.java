@@ -0,0 +1,22 @@
+package com.sadakatsu.go.domain;
+
+/**
+ * BoardLayout selects how a Board arranges its intersections in memory.  The choice never changes what a Board
+ * reports through {@link Board#get(Coordinate)} or accepts through {@link Board#set(Coordinate,
+ * com.sadakatsu.go.domain.intersection.Intersection)}; it only changes how quickly the engine can walk between
+ * neighboring intersections.
+ */
+public enum BoardLayout {
+    /**
+     * Stores exactly {@code dimension * dimension} intersections in row-major order.  Finding the neighbors of an
+     * intersection requires knowing whether it sits on an edge of the board.
+     */
+    COMPACT,
+    
+    /**
+     * Stores the intersections in a {@code (dimension + 2) * (dimension + 2)} grid whose outer ring is filled with a
+     * permanent off-board marker.  Every intersection then has its neighbors at the fixed offsets -1, +1, -stride and
+     * +stride, so neighbor scans need no edge checks.
+     */
+    PADDED;
+}
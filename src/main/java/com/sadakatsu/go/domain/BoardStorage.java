@@ -0,0 +1,22 @@
+package com.sadakatsu.go.domain;
+
+/**
+ * BoardStorage selects how much of its intersection data a Board shares with the copies made from it through
+ * {@link Board#Board(Board)}.  In both cases a copy starts out sharing its parent's intersections and takes a private
+ * copy of a block only the first time either Board writes to that block, so the two Boards never observe each other's
+ * changes.
+ */
+public enum BoardStorage {
+    /**
+     * Keeps all the intersections in a single block.  The first write after a copy duplicates the whole board, which
+     * is the cheapest arrangement for Boards that are modified heavily after being copied.
+     */
+    FLAT,
+    
+    /**
+     * Splits the intersections into blocks of {@value Board#CHUNK_SIZE} so that a copy followed by a move only
+     * duplicates the blocks that the move touched.  This suits long chains of retained positions such as the states of
+     * a Game, whose memory then grows with the number of touched blocks per move instead of the size of the board.
+     */
+    CHUNKED;
+}
@@ -0,0 +1,294 @@
+package com.sadakatsu.go.domain;
+
+import java.util.Arrays;
+
+/**
+ * Chains tracks the chains of stones on a Board as the Board changes, so that capture and self-capture tests can read
+ * a chain's stone count and liberties instead of flood filling it.  Every stone records the root of its chain and the
+ * next stone of the same chain.  Following those links from any stone visits the whole chain and comes back to the
+ * start, so two chains merge by relabeling the smaller one and splicing the two rings together.  The root of a chain
+ * holds its stone count and a bitset of its liberties, which answers {@link #libertyCount(int)},
+ * {@link #isInAtari(int)} and {@link #lastLiberty(int)} with a few word operations.
+ * <p>
+ * Placing a stone on a liberty is by far the most common change, and it is handled in place: the stone is removed
+ * from the liberty sets of the chains beside it and the friendly ones are merged into the new stone's chain by
+ * or-ing their sets.  Every other change rebuilds just the chains that touch the changed intersections.  Board shares
+ * its Chains with its copies and takes its own copy before the first change that needs one, just as it does with its
+ * chunks.  The tables are chunked the same way, so the copy shares every chunk and every liberty set with its source
+ * and only clones the ones it changes.
+ */
+final class Chains {
+    private static final short NONE = -1;
+    
+    // Each table is split into chunks of CHUNK_SIZE entries.  A 19x19 board needs 12 of them, well within the 64 whose
+    // ownership a long can track.
+    private static final int CHUNK_SHIFT = 5;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    
+    private static final int ROOTS = 0;
+    private static final int LINKS = 1;
+    private static final int SIZES = 2;
+    private static final int TABLES = 3;
+    
+    private final int dimension;
+    private final int[][] neighbors;
+    
+    // The ROOTS table maps each index to the root of the chain holding the stone there, or to NONE if it holds no
+    // stone, and the LINKS table maps it to the next stone of that chain.  The SIZES table and libertySets are only
+    // meaningful at a root.  Bit c of ownedChunks[t] is set when chunk c of tables[t] belongs to this Chains alone and
+    // may be written in place; ownedLibertyChunks does the same for the chunks of libertySets.
+    private final short[][][] tables;
+    private final long[] ownedChunks;
+    private final long[][][] libertySets;
+    private long ownedLibertyChunks;
+    
+    // Bit r is set when the liberty set of root r belongs to this Chains alone and may be written in place.
+    private final long[] ownedSets;
+    
+    // Scratch sets for repair(), which only ever runs on a Chains that belongs to a single Board.  Most copies only
+    // ever place stones, so the first repair allocates them.
+    private long[] changed;
+    private long[] region;
+    private long[] dissolved;
+    
+    Chains( int dimension ) {
+        int chunkCount = (dimension * dimension + CHUNK_MASK) >>> CHUNK_SHIFT;
+        this.dimension = dimension;
+        this.neighbors = Coordinate.getNeighborTable(dimension);
+        this.tables = new short[TABLES][chunkCount][CHUNK_SIZE];
+        for (short[] chunk : tables[ROOTS]) {
+            Arrays.fill(chunk, NONE);
+        }
+        this.ownedChunks = new long[] { -1L, -1L, -1L };
+        this.libertySets = new long[chunkCount][CHUNK_SIZE][];
+        this.ownedLibertyChunks = -1L;
+        this.ownedSets = BitBoard.newSet();
+    }
+    
+    Chains( Chains source ) {
+        this.dimension = source.dimension;
+        this.neighbors = source.neighbors;
+        this.tables = new short[TABLES][][];
+        for (int table = 0; table < TABLES; ++table) {
+            tables[table] = source.tables[table].clone();
+        }
+        this.ownedChunks = new long[TABLES];
+        this.libertySets = source.libertySets.clone();
+        this.ownedLibertyChunks = 0L;
+        this.ownedSets = BitBoard.newSet();
+    }
+    
+    static boolean isStone( byte code ) {
+        return code == Board.BLACK_CODE || code == Board.WHITE_CODE;
+    }
+    
+    private short read( int table, int index ) {
+        return tables[table][index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+    
+    private void write( int table, int index, int value ) {
+        int chunk = index >>> CHUNK_SHIFT;
+        if ((ownedChunks[table] & 1L << chunk) == 0) {
+            tables[table][chunk] = tables[table][chunk].clone();
+            ownedChunks[table] |= 1L << chunk;
+        }
+        tables[table][chunk][index & CHUNK_MASK] = (short) value;
+    }
+    
+    private long[] getLibertySet( int root ) {
+        return libertySets[root >>> CHUNK_SHIFT][root & CHUNK_MASK];
+    }
+    
+    private void setLibertySet( int root, long[] set ) {
+        int chunk = root >>> CHUNK_SHIFT;
+        if ((ownedLibertyChunks & 1L << chunk) == 0) {
+            libertySets[chunk] = libertySets[chunk].clone();
+            ownedLibertyChunks |= 1L << chunk;
+        }
+        libertySets[chunk][root & CHUNK_MASK] = set;
+    }
+    
+    /**
+     * @return the root of the chain holding the stone at index, or -1 if index holds no stone.  Two stones belong to
+     * the same chain exactly when they have the same root.
+     */
+    int getRoot( int index ) {
+        return read(ROOTS, index);
+    }
+    
+    // The remaining queries expect index to hold a stone.
+    int getSize( int index ) {
+        return read(SIZES, getRoot(index));
+    }
+    
+    int libertyCount( int index ) {
+        return BitBoard.count(getLibertySet(getRoot(index)));
+    }
+    
+    boolean isInAtari( int index ) {
+        return libertyCount(index) == 1;
+    }
+    
+    /**
+     * @return the only liberty of the chain holding the stone at index if it is in atari, or -1 otherwise
+     */
+    int lastLiberty( int index ) {
+        return isInAtari(index) ? BitBoard.next(getLibertySet(getRoot(index)), 0) : -1;
+    }
+    
+    void addLiberties( int index, long[] set ) {
+        BitBoard.addAll(set, getLibertySet(getRoot(index)));
+    }
+    
+    void addStones( int index, long[] set ) {
+        int stone = index;
+        do {
+            BitBoard.add(set, stone);
+            stone = read(LINKS, stone);
+        } while (stone != index);
+    }
+    
+    /**
+     * Records a stone that the Board has just placed at index, which counted as a liberty until then.
+     */
+    void place( Board board, int index ) {
+        byte player = board.getCode(index);
+        int[] adjacent = neighbors[index];
+        
+        write(ROOTS, index, index);
+        write(LINKS, index, index);
+        write(SIZES, index, 1);
+        long[] liberties = getEmptyLibertySet(index);
+        for (int neighbor : adjacent) {
+            byte code = board.getCode(neighbor);
+            if (Board.countsAsLiberty(code)) {
+                BitBoard.add(liberties, neighbor);
+            } else if (isStone(code)) {
+                BitBoard.remove(getOwnLibertySet(getRoot(neighbor)), index);
+            }
+        }
+        
+        int root = index;
+        for (int neighbor : adjacent) {
+            if (board.getCode(neighbor) == player && getRoot(neighbor) != root) {
+                root = merge(root, getRoot(neighbor));
+            }
+        }
+    }
+    
+    private int merge( int first, int second ) {
+        int large = read(SIZES, first) >= read(SIZES, second) ? first : second;
+        int small = large == first ? second : first;
+        
+        int stone = small;
+        do {
+            write(ROOTS, stone, large);
+            stone = read(LINKS, stone);
+        } while (stone != small);
+        
+        short link = read(LINKS, large);
+        write(LINKS, large, read(LINKS, small));
+        write(LINKS, small, link);
+        write(SIZES, large, read(SIZES, large) + read(SIZES, small));
+        BitBoard.addAll(getOwnLibertySet(large), getLibertySet(small));
+        return large;
+    }
+    
+    private long[] getOwnLibertySet( int root ) {
+        if (!BitBoard.contains(ownedSets, root)) {
+            setLibertySet(root, getLibertySet(root).clone());
+            BitBoard.add(ownedSets, root);
+        }
+        return getLibertySet(root);
+    }
+    
+    private long[] getEmptyLibertySet( int root ) {
+        if (BitBoard.contains(ownedSets, root)) {
+            Arrays.fill(getLibertySet(root), 0L);
+        } else {
+            setLibertySet(root, BitBoard.newSet());
+            BitBoard.add(ownedSets, root);
+        }
+        return getLibertySet(root);
+    }
+    
+    /**
+     * Brings the chains up to date after the Board has changed the intersections in {@code changed} in any way.
+     * <p>
+     * Only a chain that touches a changed intersection can have gained or lost stones or liberties, and two stones can
+     * only have become connected through a changed intersection.  Dissolving the chains that touch the changed
+     * intersections and rebuilding them from their surviving stones and the new stones therefore leaves every chain
+     * correct.
+     */
+    void repair( Board board, long[] changed ) {
+        if (region == null) {
+            region = BitBoard.newSet();
+            dissolved = BitBoard.newSet();
+        }
+        BitBoard.dilate(changed, region, dimension);
+        
+        System.arraycopy(changed, 0, dissolved, 0, BitBoard.WORDS);
+        for (int index = BitBoard.next(region, 0); index >= 0; index = BitBoard.next(region, index + 1)) {
+            if (getRoot(index) != NONE) {
+                int stone = index;
+                do {
+                    write(ROOTS, stone, NONE);
+                    BitBoard.add(dissolved, stone);
+                    stone = read(LINKS, stone);
+                } while (stone != index);
+            }
+        }
+        
+        for (int index = BitBoard.next(dissolved, 0); index >= 0; index = BitBoard.next(dissolved, index + 1)) {
+            if (getRoot(index) == NONE && isStone(board.getCode(index))) {
+                rebuild(board, index);
+            }
+        }
+    }
+    
+    void repair( Board board, int index ) {
+        if (changed == null) {
+            changed = BitBoard.newSet();
+        } else {
+            Arrays.fill(changed, 0L);
+        }
+        BitBoard.add(changed, index);
+        repair(board, changed);
+    }
+    
+    // Gathers every stone connected to root into a new chain.  The ring doubles as the search queue: each newly found
+    // stone is appended behind the last one, so the walk around the ring reaches it before arriving back at root.
+    private void rebuild( Board board, int root ) {
+        byte player = board.getCode(root);
+        write(ROOTS, root, root);
+        write(LINKS, root, root);
+        
+        int last = root;
+        int size = 1;
+        int stone = root;
+        do {
+            for (int neighbor : neighbors[stone]) {
+                if (getRoot(neighbor) == NONE && board.getCode(neighbor) == player) {
+                    write(ROOTS, neighbor, root);
+                    write(LINKS, neighbor, root);
+                    write(LINKS, last, neighbor);
+                    last = neighbor;
+                    ++size;
+                }
+            }
+            stone = read(LINKS, stone);
+        } while (stone != root);
+        
+        write(SIZES, root, size);
+        long[] liberties = getEmptyLibertySet(root);
+        do {
+            for (int neighbor : neighbors[stone]) {
+                if (Board.countsAsLiberty(board.getCode(neighbor))) {
+                    BitBoard.add(liberties, neighbor);
+                }
+            }
+            stone = read(LINKS, stone);
+        } while (stone != root);
+    }
+}
@@ -2,7 +2,10 @@ package com.sadakatsu.go.domain;
 
 import static com.sadakatsu.go.domain.Direction.*;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
 import com.sadakatsu.go.domain.exceptions.NoNeighborException;
 
@@ -402,57 +405,55 @@ public enum Coordinate implements Move {
         }
     }
     
-    // This type allows for lazy iteration over a Coordinate's neighbors given the maximum component.
-    private static final class NeighborIterator implements Iterable<Coordinate>, Iterator<Coordinate> {
-        private static final Direction[] DIRECTIONS = Direction.values();
+    // This type holds the precomputed neighbors of every intersection of a board with a given maximum component.  Both
+    // arrays are keyed by the row-major index (row - 1) * maxComponent + column - 1.  The engine walks the indices
+    // directly; getNeighbors() hands out the matching unmodifiable Coordinate lists.  Every field is final so that a
+    // table can be safely shared between threads even though it is published without synchronization.
+    private static final class NeighborTable {
+        final int[][] indices;
+        final List<Coordinate>[] coordinates;
         
-        private final Coordinate center;
-        private final int maxComponent;
-        
-        private int directionIndex;
-        
-        NeighborIterator( Coordinate center, int maxComponent ) {
-            validateCoordinate(center);
-            validateMaxComponent(maxComponent);
-            this.center = center;
-            this.maxComponent = maxComponent;
-            this.directionIndex = -1;
-            findNext();
-        }
-        
-        private void findNext() {
-            do {
-                ++directionIndex;
-            } while (directionIndex < DIRECTIONS.length && !center.hasNeighborTo(getCurrentDirection(), maxComponent));
-        }
-        
-        private Direction getCurrentDirection() {
-            return DIRECTIONS[directionIndex];
-        }
-        
-        @Override
-        public boolean hasNext() {
-            return directionIndex < DIRECTIONS.length;
-        }
-
-        @Override
-        public Coordinate next() {
-            Coordinate neighbor = null;
-            
-            try {
-                neighbor = center.getNeighborTo(getCurrentDirection(), maxComponent);
-                findNext();
-            } catch (NoNeighborException e) {
-                // findNext() and hasNext() should ensure that this never happens.
-                throw new IllegalStateException(e);
+        @SuppressWarnings("unchecked")
+        NeighborTable( int maxComponent ) {
+            int intersections = maxComponent * maxComponent;
+            int[][] indices = new int[intersections][];
+            List<Coordinate>[] coordinates = (List<Coordinate>[]) new List<?>[intersections];
+            for (int row = 1; row <= maxComponent; ++row) {
+                for (int column = 1; column <= maxComponent; ++column) {
+                    int[] buffer = new int[4];
+                    int count = 0;
+                    
+                    // This is the same NORTH, EAST, SOUTH, WEST order that Direction.values() returns.
+                    if (row > 1) {
+                        buffer[count++] = toIndex(column, row - 1, maxComponent);
+                    }
+                    if (column < maxComponent) {
+                        buffer[count++] = toIndex(column + 1, row, maxComponent);
+                    }
+                    if (row < maxComponent) {
+                        buffer[count++] = toIndex(column, row + 1, maxComponent);
+                    }
+                    if (column > 1) {
+                        buffer[count++] = toIndex(column - 1, row, maxComponent);
+                    }
+                    
+                    int index = toIndex(column, row, maxComponent);
+                    indices[index] = Arrays.copyOf(buffer, count);
+                    
+                    Coordinate[] neighbors = new Coordinate[count];
+                    for (int i = 0; i < count; ++i) {
+                        int neighbor = indices[index][i];
+                        neighbors[i] = LAYOUT[neighbor / maxComponent][neighbor % maxComponent];
+                    }
+                    coordinates[index] = Collections.unmodifiableList(Arrays.asList(neighbors));
+                }
             }
-            
-            return neighbor;
+            this.indices = indices;
+            this.coordinates = coordinates;
         }
-
-        @Override
-        public Iterator<Coordinate> iterator() {
-            return this;
+        
+        private static int toIndex( int column, int row, int maxComponent ) {
+            return (row - 1) * maxComponent + column - 1;
         }
     }
     
@@ -478,7 +479,7 @@ public enum Coordinate implements Move {
 
         @Override
         public Coordinate next() {
-            Coordinate coordinate = getCoordinate(new Components(column, row));
+            Coordinate coordinate = LAYOUT[row - 1][column - 1];
             
             if (column < maxComponent) {
                 ++column;
@@ -504,6 +505,17 @@ public enum Coordinate implements Move {
             setLayout(coordinate);
         }
     }
+    private static final Coordinate[][] INDEX_LAYOUTS = new Coordinate[MAX_COMPONENT + 1][];
+    static {
+        for (int maxComponent = 1; maxComponent <= MAX_COMPONENT; ++maxComponent) {
+            Coordinate[] layout = new Coordinate[maxComponent * maxComponent];
+            for (int index = 0; index < layout.length; ++index) {
+                layout[index] = LAYOUT[index / maxComponent][index % maxComponent];
+            }
+            INDEX_LAYOUTS[maxComponent] = layout;
+        }
+    }
+    private static final NeighborTable[] NEIGHBOR_TABLES = new NeighborTable[MAX_COMPONENT + 1];
     
     // STATIC METHODS //////////////////////////////////////////////////////////////////////////////////////////////////
     /**
@@ -521,8 +533,32 @@ public enum Coordinate implements Move {
             String message = String.format("Received an invalid column/row pair: %d - %d.", column, row);
             throw new IllegalArgumentException(message);
         }
-        Components components = new Components(column, row);
-        return getCoordinate(components);
+        return LAYOUT[row - 1][column - 1];
+    }
+    
+    /**
+     * Looks up the Coordinate at a row-major index on a {@code maxComponent}x{@code maxComponent} board, where index 0
+     * is {@code C01_R01}, index 1 is {@code C02_R01}, and index {@code maxComponent} starts the second row.  This is
+     * the inverse of {@link #toIndex(int)}.  The lookup is a single array access, so code that walks a board by index
+     * can call it for every intersection without creating any garbage.
+     * @param index The row-major index of the desired Coordinate
+     * @param maxComponent The number of rows and columns on the desired board
+     * @return The Coordinate at {@code index} on the desired board
+     * @throws IllegalArgumentException if {@code maxComponent} is less than 1 or greater than 19, or if {@code index}
+     * is negative or not less than {@code maxComponent * maxComponent}
+     */
+    public static Coordinate fromIndex( int index, int maxComponent ) {
+        validateMaxComponent(maxComponent);
+        Coordinate[] layout = INDEX_LAYOUTS[maxComponent];
+        if (index < 0 || index >= layout.length) {
+            String message = String.format(
+                "Received index %d, which is not on a board with max component %d.",
+                index,
+                maxComponent
+            );
+            throw new IllegalArgumentException(message);
+        }
+        return layout[index];
     }
     
     private static boolean isComponentValid( int component, int maxComponent ) {
@@ -566,6 +602,27 @@ public enum Coordinate implements Move {
         }
     }
     
+    /**
+     * Returns the neighbor table for a {@code maxComponent}x{@code maxComponent} board.  Entry {@code i} lists the
+     * row-major indices of the intersections adjacent to the intersection with row-major index {@code i}.  The tables
+     * are built the first time each board size is requested and shared afterwards, so callers must not modify them.
+     * @throws IllegalArgumentException if {@code maxComponent} is less than 1 or greater than 19
+     */
+    static int[][] getNeighborTable( int maxComponent ) {
+        return getNeighborTableFor(maxComponent).indices;
+    }
+    
+    private static NeighborTable getNeighborTableFor( int maxComponent ) {
+        validateMaxComponent(maxComponent);
+        NeighborTable table = NEIGHBOR_TABLES[maxComponent];
+        if (table == null) {
+            // Two threads may race to build the same table; both results are identical, so either may win.
+            table = new NeighborTable(maxComponent);
+            NEIGHBOR_TABLES[maxComponent] = table;
+        }
+        return table;
+    }
+    
     private static Coordinate getCoordinate ( Components components ) {
         return LAYOUT[components.row - 1][components.column - 1];
     }
@@ -576,9 +633,20 @@ public enum Coordinate implements Move {
     
     // INSTANCE CODE ///////////////////////////////////////////////////////////////////////////////////////////////////
     private final Components components;
+    private final int[] indices;
     
     private Coordinate( int column, int row ) {
         components = new Components(column, row);
+        
+        // indices[maxComponent] holds this Coordinate's row-major index on that board size, or -1 if it is off it.
+        indices = new int[MAX_COMPONENT + 1];
+        for (int maxComponent = 0; maxComponent <= MAX_COMPONENT; ++maxComponent) {
+            if (column <= maxComponent && row <= maxComponent) {
+                indices[maxComponent] = (row - 1) * maxComponent + column - 1;
+            } else {
+                indices[maxComponent] = -1;
+            }
+        }
     }
     
     /**
@@ -595,6 +663,26 @@ public enum Coordinate implements Move {
         return components.row;
     }
     
+    /**
+     * Returns the row-major index of this Coordinate on a {@code maxComponent}x{@code maxComponent} board, which is
+     * {@code (getRow() - 1) * maxComponent + getColumn() - 1}.  The value is read from a table built when the
+     * Coordinates are created.
+     * @param maxComponent The number of rows and columns on the desired board
+     * @return the index of this Coordinate on the desired board
+     * @throws IllegalArgumentException if {@code maxComponent} is less than 1 or greater than 19, or if this Coordinate
+     * is not on the desired board
+     * @see #fromIndex(int, int)
+     */
+    public int toIndex( int maxComponent ) {
+        validateMaxComponent(maxComponent);
+        int index = indices[maxComponent];
+        if (index < 0) {
+            String message = String.format("%s is not on a board with max component %d.", this, maxComponent);
+            throw new IllegalArgumentException(message);
+        }
+        return index;
+    }
+    
     /**
      * Determines whether there is a Coordinate that is adjacent to this Coordinate in the passed direction.  Every
      * Coordinate that is on the second line or higher (meaning that neither of its components are 1 or 19) will return
@@ -740,7 +828,14 @@ public enum Coordinate implements Move {
      * @see #hasNeighborTo(Direction, int)
      */
     public Iterable<Coordinate> getNeighbors( int maxComponent ) {
-        validateMaxComponent(maxComponent);
-        return new NeighborIterator(this, maxComponent);
+        NeighborTable table = getNeighborTableFor(maxComponent);
+        Iterable<Coordinate> neighbors;
+        int index = indices[maxComponent];
+        if (index >= 0) {
+            neighbors = table.coordinates[index];
+        } else {
+            neighbors = Collections.emptyList();
+        }
+        return neighbors;
     }
 }
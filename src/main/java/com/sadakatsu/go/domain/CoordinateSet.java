@@ -0,0 +1,322 @@
+package com.sadakatsu.go.domain;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A CoordinateSet is a Set of the Coordinates on a board of a given dimension, stored as one bit per intersection.
+ * Bit {@code i} stands for the Coordinate whose row-major index on that board is {@code i} (see
+ * {@link Coordinate#toIndex(int)}), so a set fits into {@value #WORDS} longs even on a 19x19 board, iterates in
+ * row-major order, and shares its layout with the bitsets that Board uses internally.
+ * <p>
+ * contains(), add() and remove() are single word operations, and size() is a handful of {@link Long#bitCount(long)}
+ * calls.  {@link #union(CoordinateSet)} and {@link #intersect(CoordinateSet)}, as well as addAll(), retainAll(),
+ * removeAll() and containsAll() when they are passed a CoordinateSet of the same dimension, work a word at a time.
+ * <p>
+ * A CoordinateSet only holds Coordinates that are on its board.  add() rejects any other Coordinate with an
+ * IllegalArgumentException, while contains() and remove() report that it is absent.  equals() and hashCode() follow
+ * the contract of {@link java.util.Set}, so a CoordinateSet is equal to any Set that holds the same Coordinates.
+ * CoordinateSet is not thread-safe.
+ */
+public final class CoordinateSet extends AbstractSet<Coordinate> {
+    /**
+     * The number of longs that {@link #toLongArray()} returns, whatever the dimension
+     */
+    public static final int WORDS = BitBoard.WORDS;
+    
+    private static final int MAX_DIMENSION = 19;
+    
+    private final int dimension;
+    private final long[] words;
+    
+    /**
+     * Creates an empty CoordinateSet for a 19x19 board.
+     */
+    public CoordinateSet() {
+        this(MAX_DIMENSION);
+    }
+    
+    /**
+     * Creates an empty CoordinateSet for a board of the passed dimension.
+     * @throws IllegalArgumentException if {@code dimension} is less than 1 or greater than 19
+     */
+    public CoordinateSet( int dimension ) {
+        if (dimension < 1 || dimension > MAX_DIMENSION) {
+            String message = String.format(
+                "Received the illegal dimension %d.  Expected 1 <= dimension <= 19.",
+                dimension
+            );
+            throw new IllegalArgumentException(message);
+        }
+        this.dimension = dimension;
+        this.words = BitBoard.newSet();
+    }
+    
+    /**
+     * Creates a CoordinateSet for a board of the passed dimension that holds the passed Coordinates.
+     * @throws IllegalArgumentException if {@code dimension} is less than 1 or greater than 19, if {@code coordinates}
+     * is null, or if any of the Coordinates is null or not on the board
+     */
+    public CoordinateSet( int dimension, Collection<? extends Coordinate> coordinates ) {
+        this(dimension);
+        if (coordinates == null) {
+            throw new IllegalArgumentException("The passed Coordinate Collection may not be null.");
+        }
+        addAll(coordinates);
+    }
+    
+    /**
+     * Creates a copy of the passed CoordinateSet.
+     * @throws IllegalArgumentException if {@code source} is null
+     */
+    public CoordinateSet( CoordinateSet source ) {
+        if (source == null) {
+            throw new IllegalArgumentException("The source cannot be null.");
+        }
+        this.dimension = source.dimension;
+        this.words = Arrays.copyOf(source.words, WORDS);
+    }
+    
+    // Wraps a copy of a BitBoard set that uses the row-major indices of a board of the passed dimension.
+    static CoordinateSet fromWords( int dimension, long[] words ) {
+        CoordinateSet result = new CoordinateSet(dimension);
+        long[] board = BitBoard.getBoardMask(dimension);
+        for (int i = 0; i < WORDS; ++i) {
+            result.words[i] = words[i] & board[i];
+        }
+        return result;
+    }
+    
+    // Returns the live bitset.  Callers inside the package may read it but must not modify it.
+    long[] getWords() {
+        return words;
+    }
+    
+    public int getDimension() {
+        return dimension;
+    }
+    
+    /**
+     * @return a copy of this set's bits, {@value #WORDS} longs in which bit {@code i % 64} of long {@code i / 64} is
+     * set when the Coordinate with index {@code i} on this set's board is a member
+     */
+    public long[] toLongArray() {
+        return Arrays.copyOf(words, WORDS);
+    }
+    
+    @Override
+    public int size() {
+        return BitBoard.count(words);
+    }
+    
+    @Override
+    public boolean isEmpty() {
+        return BitBoard.next(words, 0) < 0;
+    }
+    
+    @Override
+    public boolean contains( Object object ) {
+        return
+            object instanceof Coordinate &&
+            isOnBoard((Coordinate) object) &&
+            BitBoard.contains(words, ((Coordinate) object).toIndex(dimension));
+    }
+    
+    private boolean isOnBoard( Coordinate coordinate ) {
+        return coordinate.getColumn() <= dimension && coordinate.getRow() <= dimension;
+    }
+    
+    /**
+     * @throws IllegalArgumentException if {@code coordinate} is null or not on this set's board
+     */
+    @Override
+    public boolean add( Coordinate coordinate ) {
+        if (coordinate == null || !isOnBoard(coordinate)) {
+            String message = String.format(
+                "This CoordinateSet has dimension %d, but the passed Coordinate is %s.",
+                dimension,
+                coordinate
+            );
+            throw new IllegalArgumentException(message);
+        }
+        
+        int index = coordinate.toIndex(dimension);
+        boolean result = !BitBoard.contains(words, index);
+        BitBoard.add(words, index);
+        return result;
+    }
+    
+    @Override
+    public boolean remove( Object object ) {
+        boolean result = contains(object);
+        if (result) {
+            BitBoard.remove(words, ((Coordinate) object).toIndex(dimension));
+        }
+        return result;
+    }
+    
+    @Override
+    public void clear() {
+        Arrays.fill(words, 0L);
+    }
+    
+    @Override
+    public boolean containsAll( Collection<?> collection ) {
+        boolean result;
+        if (isSameBoard(collection)) {
+            long[] other = ((CoordinateSet) collection).words;
+            result = true;
+            for (int i = 0; result && i < WORDS; ++i) {
+                result = (other[i] & ~words[i]) == 0L;
+            }
+        } else {
+            result = super.containsAll(collection);
+        }
+        return result;
+    }
+    
+    private boolean isSameBoard( Object other ) {
+        return other instanceof CoordinateSet && ((CoordinateSet) other).dimension == dimension;
+    }
+    
+    @Override
+    public boolean addAll( Collection<? extends Coordinate> collection ) {
+        boolean result;
+        if (isSameBoard(collection)) {
+            long[] other = ((CoordinateSet) collection).words;
+            result = false;
+            for (int i = 0; i < WORDS; ++i) {
+                long combined = words[i] | other[i];
+                result |= combined != words[i];
+                words[i] = combined;
+            }
+        } else {
+            result = super.addAll(collection);
+        }
+        return result;
+    }
+    
+    @Override
+    public boolean retainAll( Collection<?> collection ) {
+        boolean result;
+        if (isSameBoard(collection)) {
+            long[] other = ((CoordinateSet) collection).words;
+            result = false;
+            for (int i = 0; i < WORDS; ++i) {
+                long combined = words[i] & other[i];
+                result |= combined != words[i];
+                words[i] = combined;
+            }
+        } else {
+            result = super.retainAll(collection);
+        }
+        return result;
+    }
+    
+    @Override
+    public boolean removeAll( Collection<?> collection ) {
+        boolean result;
+        if (isSameBoard(collection)) {
+            long[] other = ((CoordinateSet) collection).words;
+            result = false;
+            for (int i = 0; i < WORDS; ++i) {
+                long combined = words[i] & ~other[i];
+                result |= combined != words[i];
+                words[i] = combined;
+            }
+        } else {
+            result = super.removeAll(collection);
+        }
+        return result;
+    }
+    
+    /**
+     * @return a new CoordinateSet holding every Coordinate that is in this set or the passed one.  Neither set is
+     * changed.
+     * @throws IllegalArgumentException if {@code that} is null or is for a board of a different dimension
+     */
+    public CoordinateSet union( CoordinateSet that ) {
+        validateSameBoard(that);
+        CoordinateSet result = new CoordinateSet(this);
+        result.addAll(that);
+        return result;
+    }
+    
+    /**
+     * @return a new CoordinateSet holding every Coordinate that is in both this set and the passed one.  Neither set is
+     * changed.
+     * @throws IllegalArgumentException if {@code that} is null or is for a board of a different dimension
+     */
+    public CoordinateSet intersect( CoordinateSet that ) {
+        validateSameBoard(that);
+        CoordinateSet result = new CoordinateSet(this);
+        result.retainAll(that);
+        return result;
+    }
+    
+    private void validateSameBoard( CoordinateSet that ) {
+        if (!isSameBoard(that)) {
+            String message = String.format(
+                "This CoordinateSet has dimension %d, but the passed CoordinateSet is %s.",
+                dimension,
+                that == null ? null : "for dimension " + that.dimension
+            );
+            throw new IllegalArgumentException(message);
+        }
+    }
+    
+    /**
+     * @return an Iterator over the members in row-major order.  Its remove() is supported.
+     */
+    @Override
+    public Iterator<Coordinate> iterator() {
+        return new Iterator<Coordinate>() {
+            private int next = BitBoard.next(words, 0);
+            private int last = -1;
+            
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+            
+            @Override
+            public Coordinate next() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                last = next;
+                next = BitBoard.next(words, next + 1);
+                return Coordinate.fromIndex(last, dimension);
+            }
+            
+            @Override
+            public void remove() {
+                if (last < 0) {
+                    throw new IllegalStateException("next() has not returned a Coordinate since the last remove().");
+                }
+                BitBoard.remove(words, last);
+                last = -1;
+            }
+        };
+    }
+    
+    @Override
+    public boolean equals( Object other ) {
+        boolean result;
+        if (isSameBoard(other)) {
+            result = Arrays.equals(words, ((CoordinateSet) other).words);
+        } else {
+            result = super.equals(other);
+        }
+        return result;
+    }
+    
+    // The Set contract fixes the hash code as the sum of the members' hash codes, so only equals() has a fast path.
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+}
@@ -1,7 +1,6 @@
 package com.sadakatsu.go.domain;
 
 import static com.sadakatsu.go.domain.Pass.PASS;
-import static com.sadakatsu.go.domain.intersection.Empty.EMPTY;
 import static com.sadakatsu.go.domain.intersection.Stone.BLACK;
 import static com.sadakatsu.go.domain.intersection.Stone.WHITE;
 import static com.sadakatsu.go.domain.intersection.TemporarilyUnplayable.TEMPORARILY_UNPLAYABLE;
@@ -11,33 +10,39 @@ import static com.sadakatsu.go.domain.outcome.InProgress.IN_PROGRESS;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.commons.lang3.builder.Builder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
-import com.google.common.base.Objects;
+import com.sadakatsu.go.domain.exceptions.IllegalMoveException;
 import com.sadakatsu.go.domain.intersection.Intersection;
 import com.sadakatsu.go.domain.intersection.Player;
 import com.sadakatsu.go.domain.outcome.Invalidated;
 import com.sadakatsu.go.domain.outcome.Outcome;
 import com.sadakatsu.go.domain.outcome.Outcomes;
 
-// NOTE: This should probably become an interface later on so that different rule sets can be supported.  For this
-// initial development effort with the emphasis on the Chinese rule set, a single class is being used.
+// The rules that vary between rule sets are selected by a RuleSet rather than by subclasses, so that every Game state
+// can keep sharing its Boards, histories and LegalityMaps with its neighbors whatever rules it is played under.
 public class Game {
     public static class GameBuilder implements Builder<Game> {
         private final int dimension;
         private final int maxHandicapStones;
         
         private double compensation;
-        private Set<Coordinate> handicapStones;
+        private int checkpointInterval;
+        private RuleSet ruleSet;
+        private CoordinateSet handicapStones;
         
         private GameBuilder( int dimension) {
+            this.checkpointInterval = 1;
             this.compensation = 7.5;
+            this.ruleSet = RuleSet.CHINESE;
             this.dimension = dimension;
-            this.handicapStones = new HashSet<>();
+            this.handicapStones = new CoordinateSet(dimension);
             this.maxHandicapStones = dimension * dimension - 1;
         }
         
@@ -60,10 +65,43 @@ public class Game {
             return dimension;
         }
         
+        public RuleSet getRuleSet() {
+            return ruleSet;
+        }
+        
+        public GameBuilder setRuleSet( RuleSet ruleSet ) {
+            if (ruleSet == null) {
+                throw new IllegalArgumentException("The passed RuleSet may not be null.");
+            }
+            this.ruleSet = ruleSet;
+            return this;
+        }
+        
+        public int getCheckpointInterval() {
+            return checkpointInterval;
+        }
+        
+        /**
+         * Bounds the memory that a Game's history holds on to.  With an interval of k, only every k-th state is kept
+         * alive by the states that follow it; the states in between are dropped, and only their moves are remembered.
+         * Game.getPreviousState() replays those moves from the nearest kept state whenever it needs a dropped one, so
+         * walking back through a history costs at most k - 1 extra moves per k states.  The default of 1 keeps every
+         * state.
+         * @throws IllegalArgumentException if {@code interval} is less than 1
+         */
+        public GameBuilder setCheckpointInterval( int interval ) {
+            if (interval < 1) {
+                throw new IllegalArgumentException("The checkpoint interval must be at least 1.  Received " + interval);
+            }
+            this.checkpointInterval = interval;
+            return this;
+        }
+        
         public int countHandicapStones() {
             return handicapStones.size();
         }
         
+        // The copy is a plain HashSet because callers have always been free to put anything into it, null included.
         public Set<Coordinate> getHandicapStones() {
             return new HashSet<>(handicapStones);
         }
@@ -142,7 +180,7 @@ public class Game {
         
         @Override
         public Game build() {
-            return new Game(dimension, compensation, handicapStones);
+            return new Game(dimension, compensation, ruleSet, checkpointInterval, handicapStones);
         }
         
         @Override
@@ -153,6 +191,8 @@ public class Game {
                 result =
                     this.dimension == that.dimension &&
                     this.compensation == that.compensation &&
+                    this.checkpointInterval == that.checkpointInterval &&
+                    this.ruleSet == that.ruleSet &&
                     this.handicapStones.equals(that.handicapStones);
             }
             return result;
@@ -163,6 +203,8 @@ public class Game {
             HashCodeBuilder builder = new HashCodeBuilder();
             builder.append(compensation);
             builder.append(dimension);
+            builder.append(checkpointInterval);
+            builder.append(ruleSet);
             builder.append(handicapStones);
             return builder.toHashCode();
         }
@@ -173,42 +215,10 @@ public class Game {
         }
     }
     
-    private static class SuperKoComparison {
-        private SuperKoComparisonNode[] nodes;
-        
-        public SuperKoComparison( SuperKoComparison previous, Board board ) {
-            if (previous != null) {
-                nodes = Arrays.copyOf(previous.nodes, previous.nodes.length);
-            } else {
-                nodes = new SuperKoComparisonNode[board.getDimension() * board.getDimension()];
-            }
-            int stonesOnBoard = board.countNonEmptyIntersections();
-            nodes[stonesOnBoard] = new SuperKoComparisonNode(board, nodes[stonesOnBoard]);
-        }
-        
-        public boolean positionHasBeenPlayedBefore( Board board ) {
-            boolean same = false;
-            
-            int stoneCount = board.countNonEmptyIntersections();
-            for (SuperKoComparisonNode node = nodes[stoneCount]; !same && node != null; node = node.next) {
-                if (board.isSamePositionAs(node.board)) {
-                    same = true;
-                }
-            }
-            
-            return same;
-        }
-    }
-    
-    private static class SuperKoComparisonNode {
-        Board board;
-        SuperKoComparisonNode next;
-        
-        SuperKoComparisonNode( Board board, SuperKoComparisonNode next ) {
-            this.board = board;
-            this.next = next;
-        }
-    }
+    /**
+     * The number of longs that {@link #getLegalMoveMask(long[])} writes.
+     */
+    public static final int LEGAL_MOVE_MASK_WORDS = BitBoard.WORDS;
     
     public static GameBuilder newBuilder() {
         return new GameBuilder(19);
@@ -221,9 +231,12 @@ public class Game {
         return new GameBuilder(dimension);
     }
     
-    private final Board board;
+    // position holds the stones of this state.  Its liberties may still carry the markings of an earlier state, so
+    // anything that is visible outside of Game reads board instead: the same position with this state's
+    // TEMPORARILY_UNPLAYABLE markings, which getMarkedBoard() computes the first time they are needed.
+    private final Board position;
+    private volatile Board board;
     private final double compensation;
-    private final Game previousState;
     private final int capturesByBlack;
     private final int capturesByWhite;
     private final int dimension;
@@ -231,14 +244,60 @@ public class Game {
     private final Move previousMove;
     private final Outcome outcome;
     private final Player currentPlayer;
+    private final RuleSet rules;
     private final Set<Coordinate> handicapStones;
     
-    private final SuperKoComparison positionCache;
+    // previousState is null for the initial state and for every state whose parent was dropped because of the
+    // checkpoint interval.  Those states instead keep checkpoint, the nearest state that is kept, and trail, the moves
+    // that lead from checkpoint to this state (newest first), from which previous() rebuilds the dropped parent.
+    private final Game previousState;
+    private final Game checkpoint;
+    private final MoveTrail trail;
+    private final int checkpointInterval;
+    
+    // jump is a skip pointer along the chain of checkpoints, laid out as a skew-binary list so that getStateAt() can
+    // reach any checkpoint in O(log n) hops.  It is this for the initial state and null for scored or invalidated ones.
+    private final Game jump;
+    
+    // history stays empty under rule sets without positional superko.  They forbid only koPoint, the index of the
+    // intersection where currentPlayer would immediately retake a ko, or -1 if there is none.
+    private final PositionHistory history;
+    private final int koPoint;
     
-    private Integer hashCode;
+    // changed holds the intersections that the previous move altered, or is null after a pass.  It lets
+    // getLegality() derive this state's map from the previous state's one, if that one was ever computed.
+    private final long[] changed;
+    private volatile LegalityMap legality;
+    
+    // legalMoves is the set of intersection indices that are EMPTY on board, built the first time it is asked for.
+    private volatile long[] legalMoves;
+    
+    // groupIndex indexes the Groups on board.  It is built the first time any group query needs it.
+    private volatile GroupIndex groupIndex;
+    
+    // historyHash is this state's hashCode().  It is built when the state is constructed from its parent's historyHash,
+    // so that hashing a Game never walks back through its history.
+    private final int historyHash;
+    private final int previousHash;
     private String representation;
     
-    private Game( int dimension, double compensation, Set<Coordinate> handicapStones ) {
+    private static final class MoveTrail {
+        final Move move;
+        final MoveTrail previous;
+        
+        MoveTrail( Move move, MoveTrail previous ) {
+            this.move = move;
+            this.previous = previous;
+        }
+    }
+    
+    private Game(
+        int dimension,
+        double compensation,
+        RuleSet rules,
+        int checkpointInterval,
+        Set<Coordinate> handicapStones
+    ) {
         this.capturesByBlack = 0;
         this.capturesByWhite = 0;
         this.currentPlayer = handicapStones.size() == 0 ? BLACK : WHITE;
@@ -249,53 +308,65 @@ public class Game {
         this.outcome = IN_PROGRESS;
         this.previousMove = null;
         this.previousState = null;
+        this.checkpoint = null;
+        this.trail = null;
+        this.checkpointInterval = checkpointInterval;
+        this.jump = this;
+        this.rules = rules;
         
-        this.board = new Board(dimension);
+        this.board = new Board(dimension, BoardLayout.PADDED, BoardStorage.CHUNKED);
         for (Coordinate coordinate : handicapStones) {
             board.set(coordinate, BLACK);
         }
         processBoard();
         
-        this.positionCache = new SuperKoComparison(null, this.board);
+        this.position = this.board;
+        this.changed = null;
+        this.legality = null;
+        this.history = rules.usesPositionalSuperko() ? PositionHistory.EMPTY.add(this.position) : PositionHistory.EMPTY;
+        this.koPoint = -1;
+        this.historyHash = hashHistory(null);
+        this.previousHash = 0;
     }
     
     private void processBoard() {
         if (dimension == 1) {
             board.set(Coordinate.C01_R01, TEMPORARILY_UNPLAYABLE);
         } else if (handicapStones.size() < dimension * dimension - 1) {
-            Set<Coordinate> selfCaptures = new HashSet<>();
-            for (Coordinate coordinate : Coordinate.iterateOverBoard(dimension)) {
-                if (board.get(coordinate).countsAsLiberty() && isSelfCapture(coordinate)) {
-                    selfCaptures.add(coordinate);
+            long[] selfCaptures = BitBoard.newSet();
+            for (int index = 0; index < dimension * dimension; ++index) {
+                if (Board.countsAsLiberty(board.getCode(index)) && isSelfCapture(index)) {
+                    BitBoard.add(selfCaptures, index);
                 }
             }
             
-            for (Coordinate coordinate : selfCaptures) {
-                board.set(coordinate, TEMPORARILY_UNPLAYABLE);
-            }
+            board.setCodes(selfCaptures, Board.TEMPORARILY_UNPLAYABLE_CODE);
         }
     }
     
-    private boolean isSelfCapture( Coordinate coordinate ) {
-        boolean isSelfCapture = true;
-        for (Coordinate neighbor : coordinate.getNeighbors(dimension)) {
-            Intersection value = board.get(neighbor);
-            if (value.countsAsLiberty()) {
-                isSelfCapture = false;
-                break;
-            }
-        }
-        return isSelfCapture;
+    private boolean isSelfCapture( int index ) {
+        return !board.isAdjacentToLiberty(index);
     }
     
-    private Game( Game previousState, Move previousMove, int additionalCaptures, Board board, Outcome outcome ) {
+    private Game(
+        Game previousState,
+        Move previousMove,
+        int additionalCaptures,
+        Board position,
+        long[] changed,
+        int koPoint,
+        Outcome outcome,
+        boolean retainPrevious
+    ) {
         // Some constant fields are copied directly from the previous state.
         this.compensation = previousState.compensation;
         this.dimension = previousState.dimension;
         this.handicapStones = previousState.handicapStones;
+        this.rules = previousState.rules;
         
         // The rest are based on the arguments.
-        this.board = board;
+        this.position = position;
+        this.board = null;
         
         if (additionalCaptures > 0) {
             if (BLACK == previousState.currentPlayer) {
@@ -319,9 +390,29 @@ public class Game {
         this.movesPlayed = previousState.movesPlayed + 1;
         this.outcome = outcome;
         this.previousMove = previousMove;
-        this.previousState = previousState;
+        this.checkpointInterval = previousState.checkpointInterval;
+        if (previousState.movesPlayed % checkpointInterval == 0) {
+            this.checkpoint = previousState;
+            this.trail = new MoveTrail(previousMove, null);
+        } else {
+            this.checkpoint = previousState.checkpoint;
+            this.trail = new MoveTrail(previousMove, previousState.trail);
+        }
+        this.previousState = retainPrevious || checkpoint == previousState ? previousState : null;
+        
+        Game skip = checkpoint.jump;
+        if (checkpoint.chainDepth() - skip.chainDepth() == skip.chainDepth() - skip.jump.chainDepth()) {
+            this.jump = skip.jump;
+        } else {
+            this.jump = checkpoint;
+        }
         
-        this.positionCache = new SuperKoComparison(previousState.positionCache, this.board);
+        this.changed = changed;
+        this.legality = null;
+        this.history = rules.usesPositionalSuperko() ? previousState.history.add(this.position) : previousState.history;
+        this.koPoint = koPoint;
+        this.historyHash = hashHistory(previousState);
+        this.previousHash = previousState.historyHash;
     }
     
     private Game(
@@ -331,6 +422,7 @@ public class Game {
         int deadWhiteStones,
         Outcome finalOutcome
     ) {
+        this.position = finalBoard;
         this.board = finalBoard;
         this.capturesByBlack = previousState.capturesByBlack + deadWhiteStones;
         this.capturesByWhite = previousState.capturesByWhite + deadBlackStones;
@@ -338,11 +430,43 @@ public class Game {
         this.currentPlayer = previousState.currentPlayer;
         this.dimension = previousState.dimension;
         this.handicapStones = previousState.handicapStones;
+        this.rules = previousState.rules;
         this.movesPlayed = previousState.movesPlayed;
+        this.changed = null;
+        this.legality = previousState.legality;
         this.outcome = finalOutcome;
-        this.positionCache = previousState.positionCache;
+        this.history = previousState.history;
+        this.koPoint = previousState.koPoint;
         this.previousMove = previousState.previousMove;
         this.previousState = previousState;
+        this.checkpoint = null;
+        this.trail = null;
+        this.checkpointInterval = previousState.checkpointInterval;
+        this.jump = null;
+        this.historyHash = hashHistory(previousState);
+        this.previousHash = previousState.historyHash;
+    }
+    
+    // The settings that every state shares are hashed only into the initial state.  The Zobrist key of the position
+    // stands in for the Board: the markings follow from the position and the states before it.
+    private int hashHistory( Game previousState ) {
+        HashCodeBuilder builder = new HashCodeBuilder();
+        if (previousState == null) {
+            builder.append(compensation);
+            builder.append(dimension);
+            builder.append(rules);
+            builder.append(handicapStones);
+        } else {
+            builder.append(previousState.historyHash);
+            builder.append(previousMove);
+        }
+        builder.append(capturesByBlack);
+        builder.append(capturesByWhite);
+        builder.append(currentPlayer);
+        builder.append(movesPlayed);
+        builder.append(outcome);
+        builder.append(position.zobrist());
+        return builder.toHashCode();
     }
     
     public boolean isOver() {
@@ -358,11 +482,99 @@ public class Game {
     }
     
     public Game getPreviousState() {
-        if (previousState == null) {
+        if (previousState == null && checkpoint == null) {
             throw new IllegalStateException("This Game is the initial state; there is no previous Game.");
         }
         
-        return previousState;
+        return previous();
+    }
+    
+    /**
+     * @return the state of this Game after the passed number of moves, which is this state itself for
+     * {@code getMovesPlayed()}.  The state is found in O(log n) steps plus, under a checkpoint interval of k, at most
+     * k - 1 replayed moves.
+     * @throws IllegalArgumentException if {@code moveNumber} is negative or greater than {@code getMovesPlayed()}
+     */
+    public Game getStateAt( int moveNumber ) {
+        if (moveNumber < 0 || moveNumber > movesPlayed) {
+            throw new IllegalArgumentException(
+                "The move number must be in the range [0, " + movesPlayed + "].  Received " + moveNumber
+            );
+        }
+        
+        Game result;
+        if (moveNumber == movesPlayed) {
+            result = this;
+        } else if (checkpoint == null) {
+            // Only a scored or invalidated state gets here; it shares its move count with the state it came from.
+            result = previousState.getStateAt(moveNumber);
+        } else {
+            // Find the state whose trail covers moveNumber: the first one along the chain whose checkpoint is at or
+            // before it.
+            Game node = this;
+            while (node.checkpoint.movesPlayed > moveNumber) {
+                node = node.jump.movesPlayed > moveNumber ? node.jump : node.checkpoint;
+            }
+            
+            result = node.checkpoint;
+            if (result.movesPlayed < moveNumber) {
+                MoveTrail step = node.trail;
+                for (int i = node.movesPlayed; i > moveNumber; --i) {
+                    step = step.previous;
+                }
+                
+                Move[] moves = new Move[moveNumber - result.movesPlayed];
+                for (int i = moves.length - 1; i >= 0; --i) {
+                    moves[i] = step.move;
+                    step = step.previous;
+                }
+                for (Move move : moves) {
+                    result = result.apply(move, true);
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * @return every Move played to reach this state, in order
+     */
+    public List<Move> getMoveHistory() {
+        Move[] moves = new Move[movesPlayed];
+        Game node = checkpoint == null && previousState != null ? previousState : this;
+        int i = movesPlayed;
+        while (node.checkpoint != null) {
+            for (MoveTrail step = node.trail; i > node.checkpoint.movesPlayed; step = step.previous) {
+                moves[--i] = step.move;
+            }
+            node = node.checkpoint;
+        }
+        return Collections.unmodifiableList(Arrays.asList(moves));
+    }
+    
+    // The number of checkpoints between this state and the initial state, counting this one.
+    private int chainDepth() {
+        return (movesPlayed + checkpointInterval - 1) / checkpointInterval;
+    }
+    
+    // Returns the parent state, replaying it from the checkpoint if it was dropped.  The replayed states keep their own
+    // parents, so walking further back stays cheap until the walk passes the checkpoint.
+    private Game previous() {
+        Game result = previousState;
+        if (result == null && checkpoint != null) {
+            Move[] moves = new Move[movesPlayed - checkpoint.movesPlayed - 1];
+            MoveTrail node = trail.previous;
+            for (int i = moves.length - 1; i >= 0; --i) {
+                moves[i] = node.move;
+                node = node.previous;
+            }
+            
+            result = checkpoint;
+            for (Move move : moves) {
+                result = result.apply(move, true);
+            }
+        }
+        return result;
     }
     
     public int getCapturesFor( Player player ) {
@@ -383,6 +595,10 @@ public class Game {
         return dimension;
     }
     
+    public RuleSet getRuleSet() {
+        return rules;
+    }
+    
     public int getHandicap() {
         return handicapStones.size();
     }
@@ -392,7 +608,51 @@ public class Game {
     }
     
     public Intersection get( Coordinate coordinate ) {
-        return board.get(coordinate);
+        return getMarkedBoard().get(coordinate);
+    }
+    
+    Board getBoard() {
+        return getMarkedBoard();
+    }
+    
+    private Board getMarkedBoard() {
+        Board result = board;
+        if (result == null) {
+            if (outcome.isOver()) {
+                // Only the pass that ends a game leaves its board unmarked, and that state shows the final markings.
+                result = previous().getMarkedBoard();
+            } else {
+                result = prepareBoardForNextPlayer(position, getLegality());
+            }
+            board = result;
+        }
+        return result;
+    }
+    
+    private LegalityMap getLegality() {
+        LegalityMap result = legality;
+        if (result == null) {
+            LegalityMap previous = previousState == null ? null : previousState.legality;
+            if (previous == null) {
+                result = LegalityMap.compute(position);
+            } else if (changed == null) {
+                result = previous;
+            } else {
+                result = previous.update(position, changed);
+            }
+            legality = result;
+        }
+        return result;
+    }
+    
+    // Rule sets without positional superko keep no history, so for them this is always PositionHistory.EMPTY.
+    PositionHistory getPositionHistory() {
+        return history;
+    }
+    
+    // The intersection where the current player would immediately retake a ko under the simple ko rule, or -1.
+    int getKoPoint() {
+        return koPoint;
     }
     
     public Move getPreviousMove() {
@@ -418,56 +678,160 @@ public class Game {
     }
     
     public Set<Group> getGroupsOfStones() {
-        return getGroupsFor(board, false);
-    }
-    
-    private Set<Group> getGroupsFor( Board board, boolean includeAllGroups ) {
-        Set<Coordinate> grouped = new HashSet<>();
-        Set<Group> groups = new HashSet<>();
-        for (Coordinate coordinate : Coordinate.iterateOverBoard(board.getDimension())) {
-            if (!grouped.contains(coordinate)) {
-                Intersection value = board.get(coordinate);
-                if (includeAllGroups || value == BLACK || value == WHITE) {
-                    Group group = new Group(board, coordinate);
-                    for (Coordinate member : group.members) {
-                        grouped.add(member);
-                    }
-                    groups.add(group);
-                }
-            }
-        }
-        return groups;
+        return new HashSet<>(getGroupIndex().getGroupsOfStones());
     }
     
     public Set<Group> getAllGroups() {
-        return getGroupsFor(board, true);
+        return new HashSet<>(getGroupIndex().getAllGroups());
+    }
+    
+    /**
+     * @return the Group that the intersection at the passed Coordinate belongs to, whether it holds a stone or not
+     * @throws IllegalArgumentException if the Coordinate is null or is not on this Game's board
+     */
+    public Group getGroupAt( Coordinate coordinate ) {
+        return getGroupIndex().getGroupAt(getMarkedBoard().indexOf(coordinate));
+    }
+    
+    private GroupIndex getGroupIndex() {
+        GroupIndex result = groupIndex;
+        if (result == null) {
+            result = new GroupIndex(getMarkedBoard());
+            groupIndex = result;
+        }
+        return result;
     }
     
     public Set<Move> getLegalMoves() {
         Set<Move> moves = new HashSet<>();
         if (outcome == IN_PROGRESS) {
-            for (Coordinate coordinate : Coordinate.iterateOverBoard(dimension)) {
-                if (EMPTY == board.get(coordinate)) {
-                    moves.add(coordinate);
-                }
+            long[] legal = getLegalMoveSet();
+            for (int index = BitBoard.next(legal, 0); index >= 0; index = BitBoard.next(legal, index + 1)) {
+                moves.add(Coordinate.fromIndex(index, dimension));
             }
             moves.add(PASS);
         }
         return moves;
     }
     
+    /**
+     * Writes the index of every intersection where the current player may play into the start of {@code destination},
+     * in ascending order, without allocating.  The indices are those of {@link Coordinate#toIndex(int)} for this Game's
+     * dimension.  Passing is not included; see {@link #isPassLegal()}.
+     * @return the number of indices written, which is 0 once the Game is over
+     * @throws IllegalArgumentException if {@code destination} is too short to hold every legal intersection.  An array
+     * of {@code dimension * dimension} elements is always long enough.
+     */
+    public int getLegalMoveIndices( int[] destination ) {
+        int count = 0;
+        if (outcome == IN_PROGRESS) {
+            long[] legal = getLegalMoveSet();
+            if (destination == null || destination.length < BitBoard.count(legal)) {
+                throw new IllegalArgumentException(
+                    "The destination array must hold at least " + BitBoard.count(legal) + " indices."
+                );
+            }
+            
+            for (int index = BitBoard.next(legal, 0); index >= 0; index = BitBoard.next(legal, index + 1)) {
+                destination[count++] = index;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Writes the legal intersections as a bitmask into the first {@link #LEGAL_MOVE_MASK_WORDS} elements of
+     * {@code destination}, without allocating: bit {@code i % 64} of element {@code i / 64} is set when the
+     * intersection with index {@code i} is legal.  The mask is empty once the Game is over.
+     * @throws IllegalArgumentException if {@code destination} is shorter than {@link #LEGAL_MOVE_MASK_WORDS}
+     */
+    public void getLegalMoveMask( long[] destination ) {
+        if (destination == null || destination.length < LEGAL_MOVE_MASK_WORDS) {
+            throw new IllegalArgumentException(
+                "The destination array must hold at least " + LEGAL_MOVE_MASK_WORDS + " longs."
+            );
+        }
+        
+        if (outcome == IN_PROGRESS) {
+            System.arraycopy(getLegalMoveSet(), 0, destination, 0, LEGAL_MOVE_MASK_WORDS);
+        } else {
+            Arrays.fill(destination, 0, LEGAL_MOVE_MASK_WORDS, 0L);
+        }
+    }
+    
+    /**
+     * @return whether play() would accept the passed Move.  This never throws: {@code null}, a Coordinate off the board
+     * and any Move once the Game is over are simply illegal.
+     */
+    public boolean isLegal( Move move ) {
+        boolean result;
+        if (PASS == move) {
+            result = isPassLegal();
+        } else if (move != null && Coordinate.class.equals(move.getClass())) {
+            Coordinate coordinate = (Coordinate) move;
+            result =
+                coordinate.getColumn() <= dimension &&
+                coordinate.getRow() <= dimension &&
+                isLegal(coordinate.toIndex(dimension));
+        } else {
+            result = false;
+        }
+        return result;
+    }
+    
+    /**
+     * @return whether the current player may play on the intersection with the passed index, as numbered by
+     * {@link Coordinate#toIndex(int)}.  An index outside the board is illegal rather than an error.
+     */
+    public boolean isLegal( int index ) {
+        return
+            outcome == IN_PROGRESS &&
+            index >= 0 &&
+            index < dimension * dimension &&
+            BitBoard.contains(getLegalMoveSet(), index);
+    }
+    
+    /**
+     * @return whether the current player may pass, which is whenever the Game is IN_PROGRESS
+     */
+    public boolean isPassLegal() {
+        return outcome == IN_PROGRESS;
+    }
+    
+    private long[] getLegalMoveSet() {
+        long[] result = legalMoves;
+        if (result == null) {
+            Board board = getMarkedBoard();
+            result = Arrays.copyOf(board.getBitBoard().getEmpty(), BitBoard.WORDS);
+            for (int index = BitBoard.next(result, 0); index >= 0; index = BitBoard.next(result, index + 1)) {
+                if (board.getCode(index) != Board.EMPTY_CODE) {
+                    BitBoard.remove(result, index);
+                }
+            }
+            legalMoves = result;
+        }
+        return result;
+    }
+    
     public Game play( Move move ) {
         if (outcome != IN_PROGRESS) {
             throw new IllegalStateException("This Game is over; no further moves may be made (including passes).");
         }
         
         validateMove(move);
-        
+        return apply(move, false);
+    }
+    
+    // Plays a Move that is known to be legal.  retainPrevious keeps the new state's link to this one even where the
+    // checkpoint interval would drop it.
+    private Game apply( Move move, boolean retainPrevious ) {
         Game next = null;
-        if (PASS == move) {
-            next = pass();
+        if (PASS != move) {
+            next = performMove((Coordinate) move, retainPrevious);
+        } else if (PASS != previousMove) {
+            next = passButContinueGame(retainPrevious);
         } else {
-            next = performMove((Coordinate) move);
+            next = passAndEndGame(retainPrevious);
         }
         return next;
     }
@@ -487,7 +851,7 @@ public class Game {
                     if (coordinate.getColumn() > dimension || coordinate.getRow() > dimension) {
                         valid = false;
                     } else {
-                        valid = EMPTY == board.get(coordinate);
+                        valid = isPlayable(position.indexOf(coordinate));
                     }
                 }
             }
@@ -501,91 +865,239 @@ public class Game {
         }
     }
     
+    // Answers from the markings if they have been computed.  Otherwise only the one intersection is tested, so that
+    // replaying a game does not pay for markings that nobody looks at.
+    private boolean isPlayable( int index ) {
+        boolean result;
+        Board marked = board;
+        if (marked != null) {
+            result = marked.getCode(index) == Board.EMPTY_CODE;
+        } else if (!Board.countsAsLiberty(position.getCode(index)) || index == koPoint) {
+            result = false;
+        } else if (!rules.usesPositionalSuperko() && position.isAdjacentToLiberty(index)) {
+            result = true;
+        } else {
+            Board scratchPad = new Board(position);
+            ScratchArena arena = ScratchArena.get();
+            int captures = arena.play(scratchPad, index, Board.encode((Intersection) currentPlayer));
+            result = isLegalResult(scratchPad, arena, index, captures);
+        }
+        return result;
+    }
+    
+    // Judges a move that the arena has just played on scratchPad.  A legal suicide is left removed from scratchPad.
+    private boolean isLegalResult( Board scratchPad, ScratchArena arena, int index, int captures ) {
+        boolean result = captures > 0 || arena.hasLiberty(scratchPad, index);
+        if (!result && rules.allowsSuicide()) {
+            arena.removeOwnChain(scratchPad);
+            result = true;
+        }
+        if (result && rules.usesPositionalSuperko()) {
+            result = !history.contains(scratchPad);
+        }
+        return result;
+    }
+    
+    // Under the simple ko rule, the captured intersection is a ko if the move captured exactly one stone with a stone
+    // that has no friendly neighbor and no other liberty.
+    static int findKoPoint( Board position, int index, int captures, long[] captured ) {
+        int result = -1;
+        if (captures == 1) {
+            byte player = position.getCode(index);
+            boolean isKo = true;
+            for (int neighbor : Coordinate.getNeighborTable(position.getDimension())[index]) {
+                byte code = position.getCode(neighbor);
+                if (code == player || Board.countsAsLiberty(code) && !BitBoard.contains(captured, neighbor)) {
+                    isKo = false;
+                }
+            }
+            if (isKo) {
+                result = BitBoard.next(captured, 0);
+            }
+        }
+        return result;
+    }
+    
     public Game pass() {
         if (outcome != IN_PROGRESS) {
             throw new IllegalStateException("This Game is over; no further moves may be made (including passes).");
         }
         
-        Game next = null;
-        if (PASS != previousMove) {
-            next = passButContinueGame();
-        } else {
-            next = passAndEndGame();
-        }
-        return next;
+        return apply(PASS, false);
     }
     
-    private Game passButContinueGame() {
-        Board nextBoard = prepareBoardForNextPlayer(board);
-        return new Game(this, PASS, 0, nextBoard, IN_PROGRESS);
-    }
-    
-    private Board prepareBoardForNextPlayer( Board board ) {
-        Board nextBoard = new Board(board);
-        Player nextPlayer = currentPlayer.getOpposite();
+    /**
+     * Plays every Move of the passed sequence in order and returns the resulting state, which is equal to the one that
+     * calling play() once per Move would produce.  The stones are placed on one working Board, and each Move is
+     * checked once as it is played instead of once by validation and again by the move itself.  Only the states that
+     * outlive the call take a snapshot of the working Board: the ones the checkpoint interval keeps.  The final state
+     * takes the working Board itself.
+     * @throws IllegalMoveException for the first Move that is not legal when its turn comes, including any Move after
+     * the game has ended
+     */
+    public Game playAll( Iterable<? extends Move> moves ) {
+        if (outcome != IN_PROGRESS) {
+            throw new IllegalStateException("This Game is over; no further moves may be made (including passes).");
+        }
         
-        for (Coordinate coordinate : Coordinate.iterateOverBoard(dimension)) {
-            Intersection value = nextBoard.get(coordinate);
-            if (value.countsAsLiberty()) {
-                boolean isPlayable = true;
+        Game state = this;
+        Board working = new Board(position);
+        ScratchArena arena = ScratchArena.get();
+        int sequenceIndex = 0;
+        Iterator<? extends Move> iterator = moves.iterator();
+        while (iterator.hasNext()) {
+            Move move = iterator.next();
+            if (state.outcome != IN_PROGRESS) {
+                throw new IllegalMoveException(sequenceIndex, move, "the game is already over");
+            }
+            
+            // A state that the checkpoint interval drops is unreachable once the next one exists, so it may hold the
+            // working Board while that Board changes underneath it.
+            boolean isKept = (state.movesPlayed + 1) % checkpointInterval == 0 && iterator.hasNext();
+            if (PASS == move) {
+                Outcome nextOutcome = PASS == state.previousMove ? COMPLETE_BUT_NOT_SCORED : IN_PROGRESS;
+                Board nextPosition = isKept ? new Board(working) : working;
+                state = new Game(state, PASS, 0, nextPosition, null, -1, nextOutcome, false);
+            } else {
+                if (move == null || !Coordinate.class.equals(move.getClass())) {
+                    throw new IllegalMoveException(sequenceIndex, move, "it is neither a Coordinate nor Pass.PASS");
+                }
                 
-                Board scratchPad = new Board(board);
-                scratchPad.set(coordinate, (Intersection) nextPlayer);
-                int captures = removeCaptures(scratchPad, coordinate, nextPlayer);
-                if (captures == 0) {
-                    Group group = new Group(scratchPad, coordinate);
-                    if (group.liberties == 0) {
-                        isPlayable = false; // self-capture
-                    }
+                Coordinate coordinate = (Coordinate) move;
+                if (coordinate.getColumn() > dimension || coordinate.getRow() > dimension) {
+                    throw new IllegalMoveException(sequenceIndex, move, "it is not on the board");
                 }
                 
-                if (isPlayable) {
-                    if (positionCache.positionHasBeenPlayedBefore(scratchPad)) {
-                        isPlayable = false;
-                    }
+                int index = working.indexOf(coordinate);
+                if (!Board.countsAsLiberty(working.getCode(index))) {
+                    throw new IllegalMoveException(sequenceIndex, move, "the intersection is occupied");
+                } else if (index == state.koPoint) {
+                    throw new IllegalMoveException(sequenceIndex, move, "it immediately retakes a ko");
                 }
                 
-                if (isPlayable) {
-                    nextBoard.set(coordinate, EMPTY);
-                } else {
-                    nextBoard.set(coordinate, TEMPORARILY_UNPLAYABLE);
+                int captures = arena.play(working, index, Board.encode((Intersection) state.currentPlayer));
+                if (captures == 0 && !arena.hasLiberty(working, index)) {
+                    if (!rules.allowsSuicide()) {
+                        throw new IllegalMoveException(sequenceIndex, move, "it is self-capture");
+                    }
+                    arena.removeOwnChain(working);
+                }
+                if (rules.usesPositionalSuperko() && state.history.contains(working)) {
+                    throw new IllegalMoveException(sequenceIndex, move, "it repeats an earlier position");
                 }
+                
+                Board nextPosition = isKept ? new Board(working) : working;
+                state = state.advance(coordinate, index, captures, nextPosition, arena, false);
             }
+            ++sequenceIndex;
         }
-        
-        return nextBoard;
+        return state;
+    }
+    
+    /**
+     * Equivalent to {@link #playAll(Iterable)} for a sequence held in an array.
+     */
+    public Game replay( Move... moves ) {
+        return playAll(Arrays.asList(moves));
+    }
+    
+    private Game passButContinueGame( boolean retainPrevious ) {
+        return new Game(this, PASS, 0, position, null, -1, IN_PROGRESS, retainPrevious);
     }
     
-    private int removeCaptures( Board board, Coordinate around, Player playedBy ) {
-        int captures = 0;
+    private Board prepareBoardForNextPlayer( Board board, LegalityMap legality ) {
+        Board nextBoard = new Board(board);
+        Board scratchPad = null;
+        ScratchArena arena = ScratchArena.get();
+        byte nextPlayerCode = Board.encode((Intersection) currentPlayer);
+        long[] selfCaptures = legality.getSelfCaptures(nextPlayerCode);
+        long[] captures = legality.getCaptures(nextPlayerCode);
         
-        Intersection opposite = (Intersection) playedBy.getOpposite();
-        for (Coordinate neighbor : around.getNeighbors(board.getDimension())) {
-            Intersection value = board.get(neighbor);
-            if (value == opposite) {
-                Group group = new Group(board, neighbor);
-                if (group.liberties == 0) {
-                    captures += group.members.size();
-                    for (Coordinate captured : group.members) {
-                        board.set(captured, EMPTY);
+        long[] liberties = board.getBitBoard().getEmpty();
+        for (int index = BitBoard.next(liberties, 0); index >= 0; index = BitBoard.next(liberties, index + 1)) {
+            boolean isPlayable;
+            if (BitBoard.contains(selfCaptures, index)) {
+                isPlayable = false;
+                if (rules.allowsSuicide()) {
+                    if (scratchPad == null) {
+                        scratchPad = new Board(board);
                     }
+                    arena.play(scratchPad, index, nextPlayerCode);
+                    arena.removeOwnChain(scratchPad);
+                    isPlayable = !rules.usesPositionalSuperko() || !history.contains(scratchPad);
+                    arena.undo(scratchPad);
+                }
+            } else if (!rules.usesPositionalSuperko()) {
+                isPlayable = index != koPoint;
+            } else {
+                // A move that captures nothing can only repeat a position if its resulting key is in the history.
+                isPlayable = true;
+                long key = board.zobristAfterSetting(index, nextPlayerCode);
+                if (BitBoard.contains(captures, index) || history.containsKey(key)) {
+                    if (scratchPad == null) {
+                        scratchPad = new Board(board);
+                    }
+                    arena.play(scratchPad, index, nextPlayerCode);
+                    isPlayable = !history.contains(scratchPad);
+                    arena.undo(scratchPad);
                 }
             }
+            
+            // nextBoard shares its chunks with the position, so only the markings that differ from the ones the
+            // position already carries are written.  The rest cost nothing and keep their chunks shared.
+            byte marking = isPlayable ? Board.EMPTY_CODE : Board.TEMPORARILY_UNPLAYABLE_CODE;
+            if (nextBoard.getCode(index) != marking) {
+                nextBoard.setCode(index, marking);
+            }
         }
         
-        return captures;
+        return nextBoard;
     }
     
-    private Game passAndEndGame() {
-        return new Game(this, PASS, 0, board, COMPLETE_BUT_NOT_SCORED);
+    private Game passAndEndGame( boolean retainPrevious ) {
+        return new Game(this, PASS, 0, position, null, -1, COMPLETE_BUT_NOT_SCORED, retainPrevious);
     }
     
-    private Game performMove( Coordinate move ) {
-        Board nextBoard = new Board(board);
-        nextBoard.set(move, (Intersection) currentPlayer);
-        int additionalCaptures = removeCaptures(nextBoard, move, currentPlayer);
-        nextBoard = prepareBoardForNextPlayer(nextBoard);
-        return new Game(this, move, additionalCaptures, nextBoard, IN_PROGRESS);
+    private Game performMove( Coordinate move, boolean retainPrevious ) {
+        Board nextPosition = new Board(position);
+        int index = nextPosition.indexOf(move);
+        ScratchArena arena = ScratchArena.get();
+        int additionalCaptures = arena.play(nextPosition, index, Board.encode((Intersection) currentPlayer));
+        if (additionalCaptures == 0 && !arena.hasLiberty(nextPosition, index)) {
+            // validateMove() has already established that the rules allow this suicide.
+            arena.removeOwnChain(nextPosition);
+        }
+        return advance(move, index, additionalCaptures, nextPosition, arena, retainPrevious);
+    }
+    
+    // Creates the state that follows a move which the arena has just played on nextPosition.
+    private Game advance(
+        Coordinate move,
+        int index,
+        int additionalCaptures,
+        Board nextPosition,
+        ScratchArena arena,
+        boolean retainPrevious
+    ) {
+        long[] captured = arena.getCaptured();
+        long[] changed = Arrays.copyOf(captured, BitBoard.WORDS);
+        BitBoard.add(changed, index);
+        BitBoard.addAll(changed, arena.getSelfCaptured());
+        
+        int nextKoPoint = -1;
+        if (!rules.usesPositionalSuperko()) {
+            nextKoPoint = findKoPoint(nextPosition, index, additionalCaptures, captured);
+        }
+        return new Game(
+            this,
+            move,
+            additionalCaptures,
+            nextPosition,
+            changed,
+            nextKoPoint,
+            IN_PROGRESS,
+            retainPrevious
+        );
     }
     
     public Game score() {
@@ -600,7 +1112,7 @@ public class Game {
         
         int deadBlackStones = 0;
         int deadWhiteStones = 0;
-        Board clean = new Board(board);
+        Board clean = new Board(getMarkedBoard());
         if (deadGroups != null && deadGroups.size() > 0) {
             for (Group group : deadGroups) {
                 int count = group.members.size();
@@ -609,27 +1121,43 @@ public class Game {
                 } else {
                     deadWhiteStones += count;
                 }
-                for (Coordinate coordinate : group.members) {
-                    clean.set(coordinate, EMPTY);
-                }
+                clean.setCodes(group.membership, Board.EMPTY_CODE);
             }
         }
         
         // This step is not strictly necessary, but it should simplify presentation of the final scored position.
-        for (Coordinate coordinate : Coordinate.iterateOverBoard(dimension)) {
-            if (TEMPORARILY_UNPLAYABLE == clean.get(coordinate)) {
-                clean.set(coordinate, EMPTY);
+        for (int index = 0; index < dimension * dimension; ++index) {
+            if (clean.getCode(index) == Board.TEMPORARILY_UNPLAYABLE_CODE) {
+                clean.setCode(index, Board.EMPTY_CODE);
             }
         }
         
-        double adjustment = (compensation + handicapStones.size()) / 2.;
+        double adjustment = compensation;
+        if (rules.compensatesHandicap()) {
+            adjustment += handicapStones.size();
+        }
+        adjustment /= 2.;
+        
         double blackPointsOnBoard = 0.;
         double whitePointsOnBoard = 0.;
+        if (rules.scoresTerritory()) {
+            blackPointsOnBoard = capturesByBlack + deadWhiteStones;
+            whitePointsOnBoard = capturesByWhite + deadBlackStones;
+        }
         
-        Set<Group> groups = getGroupsFor(clean, true);
-        for (Group group : groups) {
-            boolean blackScores = group.type == BLACK || group.type.countsAsLiberty() && group.bordersBlack;
-            boolean whiteScores = group.type == WHITE || group.type.countsAsLiberty() && group.bordersWhite;
+        // Without dead groups the clean board only differs from the marked one by markings, which Group ignores.
+        GroupIndex index = deadGroups != null && deadGroups.size() > 0 ? new GroupIndex(clean) : getGroupIndex();
+        for (Group group : index.getAllGroups()) {
+            boolean blackScores;
+            boolean whiteScores;
+            if (rules.scoresTerritory()) {
+                // Stones are not counted, and neither is an empty area that both colors reach.
+                blackScores = group.type.countsAsLiberty() && group.bordersBlack && !group.bordersWhite;
+                whiteScores = group.type.countsAsLiberty() && group.bordersWhite && !group.bordersBlack;
+            } else {
+                blackScores = group.type == BLACK || group.type.countsAsLiberty() && group.bordersBlack;
+                whiteScores = group.type == WHITE || group.type.countsAsLiberty() && group.bordersWhite;
+            }
             if (blackScores || whiteScores) {
                 double points = group.members.size();
                 
@@ -652,10 +1180,14 @@ public class Game {
     }
     
     private void validateDeadGroups( Set<Group> groups ) {
-        if (groups != null) {
-            Set<Group> actualGroups = getAllGroups();
+        if (groups != null && !groups.isEmpty() && !rules.removesDeadStones()) {
+            throw new IllegalArgumentException(
+                "The " + rules + " rules count every stone left on the board as alive; no groups may be marked as dead."
+            );
+        } else if (groups != null) {
+            GroupIndex index = getGroupIndex();
             for (Group candidate : groups) {
-                if (!actualGroups.contains(candidate)) {
+                if (!index.contains(candidate)) {
                     throw new IllegalArgumentException(
                         "Received a Group that does not exist on this Game's Board: " + candidate
                     );
@@ -673,7 +1205,7 @@ public class Game {
             throw new IllegalStateException("Only a Game IN_PROGRESS can be invalided.");
         }
         
-        return new Game(this, board, 0, 0, Invalidated.INVALIDATED);
+        return new Game(this, getMarkedBoard(), 0, 0, Invalidated.INVALIDATED);
     }
     
     public Game resume() {
@@ -681,49 +1213,48 @@ public class Game {
             throw new IllegalStateException("Only a Game COMPLETE_BUT_NOT_SCORED can be resumed.");
         }
         
-        return previousState.previousState;
+        return previous().previous();
     }
     
     @Override
     public boolean equals( Object other ) {
         boolean result = this == other;
         if (!result && other != null && Game.class.equals(other.getClass())) {
-            Game that = (Game) other;
-            result =
-                capturesByBlack == that.capturesByBlack &&
-                capturesByWhite == that.capturesByWhite &&
-                compensation == that.compensation &&
-                currentPlayer == that.currentPlayer &&
-                dimension == that.dimension &&
-                movesPlayed == that.movesPlayed &&
-                previousMove == that.previousMove &&
-                handicapStones.equals(that.handicapStones) &&
-                outcome.equals(that.outcome) &&
-                board.equals(that.board) &&
-                Objects.equal(previousState, that.previousState);
+            // Walks both histories side by side instead of recursing, and stops as soon as they reach a shared state.
+            Game left = this;
+            Game right = (Game) other;
+            result = true;
+            while (result && left != right) {
+                result = left != null && right != null && left.isSameStateAs(right);
+                if (result) {
+                    left = left.previous();
+                    right = right.previous();
+                }
+            }
         }
         return result;
     }
     
+    // Compares everything but the previous states.  Given equal previous states, equal positions imply equal markings.
+    private boolean isSameStateAs( Game that ) {
+        return
+            historyHash == that.historyHash &&
+            capturesByBlack == that.capturesByBlack &&
+            capturesByWhite == that.capturesByWhite &&
+            compensation == that.compensation &&
+            currentPlayer == that.currentPlayer &&
+            dimension == that.dimension &&
+            movesPlayed == that.movesPlayed &&
+            previousMove == that.previousMove &&
+            rules == that.rules &&
+            handicapStones.equals(that.handicapStones) &&
+            outcome.equals(that.outcome) &&
+            position.isSamePositionAs(that.position);
+    }
+    
     @Override
     public int hashCode() {
-        if (hashCode == null) {
-            HashCodeBuilder builder = new HashCodeBuilder();
-            builder.append(previousState); // this could take a while...
-            builder.append(previousMove);
-            builder.append(capturesByBlack);
-            builder.append(capturesByWhite);
-            builder.append(compensation);
-            builder.append(currentPlayer);
-            builder.append(dimension);
-            builder.append(movesPlayed);
-            builder.append(outcome);
-            builder.append(handicapStones);
-            builder.append(board);
-            hashCode = builder.toHashCode();
-        }
-        
-        return hashCode;
+        return historyHash;
     }
     
     @Override
@@ -761,10 +1292,10 @@ public class Game {
                 builder.append("\nPrevious Move @ ");
                 builder.append(previousMove);
                 builder.append(", Previous State Hash: ");
-                builder.append(previousState.hashCode());
+                builder.append(previousHash);
             }
             builder.append("\n");
-            builder.append(board);
+            builder.append(getMarkedBoard());
             
             representation = builder.toString();
         }
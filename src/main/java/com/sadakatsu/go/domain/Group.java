@@ -2,18 +2,11 @@ package com.sadakatsu.go.domain;
 
 import static com.sadakatsu.go.domain.intersection.Empty.EMPTY;
 import static com.sadakatsu.go.domain.intersection.PermanentlyUnplayable.PERMANENTLY_UNPLAYABLE;
-import static com.sadakatsu.go.domain.intersection.Stone.BLACK;
-import static com.sadakatsu.go.domain.intersection.Stone.WHITE;
-import static com.sadakatsu.go.domain.intersection.TemporarilyUnplayable.TEMPORARILY_UNPLAYABLE;
 
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Queue;
 import java.util.Set;
 
-import org.apache.commons.lang3.builder.HashCodeBuilder;
-
 import com.sadakatsu.go.domain.intersection.Intersection;
 
 public class Group {
@@ -23,46 +16,47 @@ public class Group {
     public final Intersection type;
     public final Set<Coordinate> members;
     
-    private Integer hashCode;
+    // The member bits use the same row-major indices as the Board the Group was built from.  They are the storage
+    // behind members, so the two can never disagree.
+    final long[] membership;
+    
+    private final int dimension;
+    private final int hashCode;
     private String representation;
     
     public Group( Board board, Coordinate start ) {
         validateBoard(board);
-        boolean bordersBlack = false;
-        boolean bordersWhite = false;
-        int liberties = 0;
-        Intersection type = board.get(start);
-        Set<Coordinate> group = new HashSet<>();
+        int dimension = board.getDimension();
+        int startIndex = board.indexOf(start);
+        byte type = board.getCode(startIndex);
+        BitBoard bitBoard = board.getBitBoard();
         
-        Queue<Coordinate> toVisit = new LinkedList<>();
-        Set<Coordinate> queued = new HashSet<>();
-        toVisit.add(start);
-        queued.add(start);
-        while (!toVisit.isEmpty()) {
-            Coordinate current = toVisit.remove();
-            Intersection currentValue = board.get(current);
-            if (type == currentValue || type.countsAsLiberty() && currentValue.countsAsLiberty()) {
-                group.add(current);
-                for (Coordinate neighbor : current.getNeighbors(board.getDimension())) {
-                    if (!queued.contains(neighbor)) {
-                        toVisit.add(neighbor);
-                        queued.add(neighbor);
-                    }
-                }
-            } else if (currentValue.countsAsLiberty()) {
-                ++liberties;
-            } else if (BLACK == currentValue) {
-                bordersBlack = true;
-            } else if (WHITE == currentValue) {
-                bordersWhite = true;
-            }
+        long[] within = BitBoard.newSet();
+        bitBoard.getIntersectionsWith(type, within);
+        long[] members = BitBoard.newSet();
+        BitBoard.add(members, startIndex);
+        long[] border = BitBoard.newSet();
+        BitBoard.floodFill(members, within, border, dimension);
+        
+        BitBoard.dilate(members, border, dimension);
+        for (int i = 0; i < BitBoard.WORDS; ++i) {
+            border[i] &= ~members[i];
+        }
+        
+        long[] liberties = Arrays.copyOf(bitBoard.getEmpty(), BitBoard.WORDS);
+        for (int i = 0; i < BitBoard.WORDS; ++i) {
+            liberties[i] &= border[i];
         }
         
-        this.type = type == TEMPORARILY_UNPLAYABLE ? EMPTY : type;
-        this.bordersBlack = bordersBlack;
-        this.bordersWhite = bordersWhite;
-        this.liberties = liberties;
-        this.members = Collections.unmodifiableSet(group);
+        this.type = type == Board.TEMPORARILY_UNPLAYABLE_CODE ? EMPTY : Board.decode(type);
+        this.bordersBlack = BitBoard.intersects(border, bitBoard.getBlack());
+        this.bordersWhite = BitBoard.intersects(border, bitBoard.getWhite());
+        this.liberties = BitBoard.count(liberties);
+        CoordinateSet memberSet = CoordinateSet.fromWords(dimension, members);
+        this.members = Collections.unmodifiableSet(memberSet);
+        this.membership = memberSet.getWords();
+        this.dimension = dimension;
+        this.hashCode = hash();
     }
     
     private void validateBoard( Board board ) {
@@ -71,33 +65,45 @@ public class Group {
         }
     }
     
+    // A Group's first member in row-major order is the same Coordinate whatever the board's dimension, and no two
+    // Groups of one Board share it, so it stands in for the member set.  Groups with equal members always agree on it.
+    private int hash() {
+        Coordinate first = Coordinate.fromIndex(BitBoard.next(membership, 0), dimension);
+        int result = first.getRow() * 20 + first.getColumn();
+        result = result * 31 + BitBoard.count(membership);
+        result = result * 31 + liberties;
+        result = result * 31 + Board.encode(type);
+        result = result * 4 + (bordersBlack ? 2 : 0) + (bordersWhite ? 1 : 0);
+        return result;
+    }
+    
     @Override
     public boolean equals( Object other ) {
         boolean result = this == other;
         if (!result && other != null && Group.class.equals(other.getClass())) {
             Group that = (Group) other;
             result =
+                this.hashCode == that.hashCode &&
                 this.bordersBlack == that.bordersBlack &&
                 this.bordersWhite == that.bordersWhite &&
                 this.liberties == that.liberties &&
                 this.type == that.type &&
-                members.equals(that.members);
+                hasSameMembersAs(that);
         }
         return result;
     }
     
+    // Groups from Boards of the same dimension compare their bits directly.  Otherwise the same Coordinate has a
+    // different index on each Board, so the comparison falls back to the Coordinates themselves.
+    private boolean hasSameMembersAs( Group that ) {
+        return
+            this.dimension == that.dimension ?
+                Arrays.equals(this.membership, that.membership) :
+                this.members.equals(that.members);
+    }
+    
     @Override
     public int hashCode() {
-        if (hashCode == null) {
-            HashCodeBuilder builder = new HashCodeBuilder();
-            builder.append(bordersBlack);
-            builder.append(bordersWhite);
-            builder.append(liberties);
-            builder.append(type);
-            builder.append(members);
-            hashCode = builder.toHashCode();
-        }
-        
         return hashCode;
     }
     
@@ -0,0 +1,75 @@
+package com.sadakatsu.go.domain;
+
+import static com.sadakatsu.go.domain.intersection.Stone.BLACK;
+import static com.sadakatsu.go.domain.intersection.Stone.WHITE;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * GroupIndex holds every Group on a Board together with the Group that each intersection belongs to.  Game builds one
+ * the first time any of its group queries needs it, so that listing the groups, finding the Group at a Coordinate,
+ * validating dead groups and scoring all share a single flood fill per Group instead of repeating it per query.
+ * <p>
+ * GroupIndexes are never modified after construction and may be shared freely between threads.
+ */
+final class GroupIndex {
+    private final int[] groupIds;
+    private final List<Group> groups;
+    private final Set<Group> allGroups;
+    private final Set<Group> groupsOfStones;
+    
+    GroupIndex( Board board ) {
+        int dimension = board.getDimension();
+        this.groupIds = new int[dimension * dimension];
+        Arrays.fill(groupIds, -1);
+        
+        List<Group> groups = new ArrayList<>();
+        Set<Group> allGroups = new HashSet<>();
+        Set<Group> groupsOfStones = new HashSet<>();
+        for (int index = 0; index < groupIds.length; ++index) {
+            if (groupIds[index] < 0) {
+                Group group = new Group(board, Coordinate.fromIndex(index, dimension));
+                long[] members = group.membership;
+                for (int member = BitBoard.next(members, 0); member >= 0; member = BitBoard.next(members, member + 1)) {
+                    groupIds[member] = groups.size();
+                }
+                
+                groups.add(group);
+                allGroups.add(group);
+                if (group.type == BLACK || group.type == WHITE) {
+                    groupsOfStones.add(group);
+                }
+            }
+        }
+        
+        this.groups = groups;
+        this.allGroups = Collections.unmodifiableSet(allGroups);
+        this.groupsOfStones = Collections.unmodifiableSet(groupsOfStones);
+    }
+    
+    Group getGroupAt( int index ) {
+        return groups.get(groupIds[index]);
+    }
+    
+    Set<Group> getAllGroups() {
+        return allGroups;
+    }
+    
+    Set<Group> getGroupsOfStones() {
+        return groupsOfStones;
+    }
+    
+    /**
+     * @return whether the passed Group is one of the Groups on the indexed Board.  Only the Group holding the
+     * candidate's first member needs to be compared.
+     */
+    boolean contains( Group group ) {
+        int first = BitBoard.next(group.membership, 0);
+        return first >= 0 && first < groupIds.length && getGroupAt(first).equals(group);
+    }
+}
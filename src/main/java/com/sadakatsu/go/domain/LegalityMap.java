@@ -0,0 +1,136 @@
+package com.sadakatsu.go.domain;
+
+import java.util.Arrays;
+
+/**
+ * LegalityMap records, for both colors, which liberty intersections of a Board would be self-capture and which would
+ * capture at least one opposing stone.  Neither property depends on the position history, so the map can be carried
+ * from one Game state to the next and only patched where a move could have changed it.
+ * <p>
+ * Whether a stone at an intersection is self-capture or captures something depends only on the colors of its
+ * neighbors and on the liberties of the chains beside it.  A move changes the colors of the played intersection and of
+ * the captured stones, and it changes the liberties only of chains that touch those intersections.  Every other
+ * intersection keeps its old answer, which is why {@link #update(Board, long[])} only re-tests the liberties next to
+ * those chains.
+ * <p>
+ * LegalityMaps are never modified after construction, so a state that passes can share its map with its parent.
+ */
+final class LegalityMap {
+    private final long[] blackSelfCaptures;
+    private final long[] whiteSelfCaptures;
+    private final long[] blackCaptures;
+    private final long[] whiteCaptures;
+    
+    /**
+     * Tests every liberty intersection of the passed Board for both colors.
+     */
+    static LegalityMap compute( Board board ) {
+        LegalityMap map = new LegalityMap();
+        map.evaluate(board, board.getBitBoard().getEmpty());
+        return map;
+    }
+    
+    private LegalityMap() {
+        this.blackSelfCaptures = BitBoard.newSet();
+        this.whiteSelfCaptures = BitBoard.newSet();
+        this.blackCaptures = BitBoard.newSet();
+        this.whiteCaptures = BitBoard.newSet();
+    }
+    
+    private LegalityMap( LegalityMap source ) {
+        this.blackSelfCaptures = Arrays.copyOf(source.blackSelfCaptures, BitBoard.WORDS);
+        this.whiteSelfCaptures = Arrays.copyOf(source.whiteSelfCaptures, BitBoard.WORDS);
+        this.blackCaptures = Arrays.copyOf(source.blackCaptures, BitBoard.WORDS);
+        this.whiteCaptures = Arrays.copyOf(source.whiteCaptures, BitBoard.WORDS);
+    }
+    
+    /**
+     * Derives the map for a Board that differs from the one this map describes only at the intersections in
+     * {@code changed}: the intersection where a stone was played plus the stones that it captured.
+     */
+    LegalityMap update( Board board, long[] changed ) {
+        int dimension = board.getDimension();
+        BitBoard bitBoard = board.getBitBoard();
+        
+        // The chains of either color that touch a changed intersection are the only ones whose liberties changed, so
+        // the intersections to re-test are those beside a changed intersection plus the liberties of those chains.
+        long[] region = BitBoard.newSet();
+        long[] liberties = BitBoard.newSet();
+        BitBoard.dilate(changed, region, dimension);
+        for (int index = BitBoard.next(region, 0); index >= 0; index = BitBoard.next(region, index + 1)) {
+            if (board.getChainRoot(index) >= 0) {
+                board.addChainLibertiesTo(index, liberties);
+            }
+        }
+        BitBoard.retainAll(region, bitBoard.getEmpty());
+        BitBoard.addAll(region, liberties);
+        
+        LegalityMap map = new LegalityMap(this);
+        map.clear(changed);
+        map.clear(region);
+        map.evaluate(board, region);
+        return map;
+    }
+    
+    private void clear( long[] intersections ) {
+        BitBoard.removeAll(blackSelfCaptures, intersections);
+        BitBoard.removeAll(whiteSelfCaptures, intersections);
+        BitBoard.removeAll(blackCaptures, intersections);
+        BitBoard.removeAll(whiteCaptures, intersections);
+    }
+    
+    private void evaluate( Board board, long[] intersections ) {
+        int[][] neighbors = Coordinate.getNeighborTable(board.getDimension());
+        for (int index = BitBoard.next(intersections, 0); index >= 0; index = BitBoard.next(intersections, index + 1)) {
+            evaluate(board, neighbors[index], index, Board.BLACK_CODE, blackSelfCaptures, blackCaptures);
+            evaluate(board, neighbors[index], index, Board.WHITE_CODE, whiteSelfCaptures, whiteCaptures);
+        }
+    }
+    
+    // The intersection is a liberty of every chain beside it.  A stone there therefore captures exactly when an
+    // opposing chain beside it has no other liberty, and it is self-capture when it captures nothing, has no liberty
+    // of its own, and leaves no friendly chain beside it with another liberty.
+    private void evaluate(
+        Board board,
+        int[] neighbors,
+        int index,
+        byte player,
+        long[] selfCaptures,
+        long[] captures
+    ) {
+        boolean capturing = false;
+        boolean breathing = false;
+        for (int neighbor : neighbors) {
+            byte code = board.getCode(neighbor);
+            if (Board.countsAsLiberty(code)) {
+                breathing = true;
+            } else if (code == player) {
+                breathing |= !board.isChainInAtari(neighbor);
+            } else if (Chains.isStone(code)) {
+                capturing |= board.isChainInAtari(neighbor);
+            }
+        }
+        
+        if (capturing) {
+            BitBoard.add(captures, index);
+        } else if (!breathing) {
+            BitBoard.add(selfCaptures, index);
+        }
+    }
+    
+    /**
+     * @return the intersections where a stone of the passed color would capture nothing and have no liberties.  The
+     * returned set must not be modified.
+     */
+    long[] getSelfCaptures( byte player ) {
+        return player == Board.BLACK_CODE ? blackSelfCaptures : whiteSelfCaptures;
+    }
+    
+    /**
+     * @return the intersections where a stone of the passed color would capture at least one opposing stone.  The
+     * returned set must not be modified.
+     */
+    long[] getCaptures( byte player ) {
+        return player == Board.BLACK_CODE ? blackCaptures : whiteCaptures;
+    }
+}
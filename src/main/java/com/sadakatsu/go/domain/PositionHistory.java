@@ -0,0 +1,158 @@
+package com.sadakatsu.go.domain;
+
+/**
+ * PositionHistory records the positions of a game for positional superko.  It is a persistent hash array mapped trie
+ * keyed by each position's Zobrist key: {@link #add(Board)} leaves the history it is called on untouched and returns
+ * a new history that shares every node except the few on the path to the new entry.  Every Game state can therefore
+ * hold its own history, and any number of variations can branch from the same state, for O(log n) space and time per
+ * move instead of a copy of the whole history.
+ * <p>
+ * Each entry keeps a snapshot of its position instead of the Board itself: the Zobrist key and the words of the
+ * black and white bitsets, which is all that identifies a position within one game.  A history therefore never keeps
+ * the Boards of the Game states it came from alive, so states that a checkpoint interval drops can be collected.
+ * <p>
+ * Checking whether a position has occurred before costs one walk down the trie, plus a comparison of the stones only
+ * for the positions whose keys match.  PositionHistories are immutable and may be shared freely between threads.
+ */
+final class PositionHistory {
+    private static final int BITS_PER_LEVEL = 5;
+    private static final int LEVEL_MASK = (1 << BITS_PER_LEVEL) - 1;
+    
+    static final PositionHistory EMPTY = new PositionHistory(null, 0);
+    
+    // A leaf of the trie.  stones holds the black words followed by the white words of the position's BitBoard.
+    // Positions whose keys are identical are chained through next, newest first.
+    private static final class Entry {
+        final long key;
+        final long[] stones;
+        final Entry next;
+        
+        Entry( long key, long[] stones, Entry next ) {
+            this.key = key;
+            this.stones = stones;
+            this.next = next;
+        }
+        
+        boolean holds( Board board ) {
+            BitBoard bitBoard = board.getBitBoard();
+            long[] black = bitBoard.getBlack();
+            long[] white = bitBoard.getWhite();
+            boolean same = true;
+            for (int i = 0; same && i < BitBoard.WORDS; ++i) {
+                same = stones[i] == black[i] && stones[BitBoard.WORDS + i] == white[i];
+            }
+            return same;
+        }
+    }
+    
+    // An interior node of the trie.  Bit i of bitmap is set when the node has a child for the five key bits i, and
+    // children holds those children (each either an Entry or a Node) in bit order.
+    private static final class Node {
+        final int bitmap;
+        final Object[] children;
+        
+        Node( int bitmap, Object[] children ) {
+            this.bitmap = bitmap;
+            this.children = children;
+        }
+    }
+    
+    private final Node root;
+    private final int size;
+    
+    private PositionHistory( Node root, int size ) {
+        this.root = root;
+        this.size = size;
+    }
+    
+    /**
+     * @return a history that contains every position in this one plus the position on {@code board}
+     */
+    PositionHistory add( Board board ) {
+        BitBoard bitBoard = board.getBitBoard();
+        long[] stones = new long[BitBoard.WORDS * 2];
+        System.arraycopy(bitBoard.getBlack(), 0, stones, 0, BitBoard.WORDS);
+        System.arraycopy(bitBoard.getWhite(), 0, stones, BitBoard.WORDS, BitBoard.WORDS);
+        return new PositionHistory(insert(root, new Entry(board.zobrist(), stones, null), 0), size + 1);
+    }
+    
+    /**
+     * @return the number of positions that have been added to reach this history
+     */
+    int size() {
+        return size;
+    }
+    
+    private static Node insert( Node node, Entry entry, int shift ) {
+        int bit = 1 << (int) (entry.key >>> shift & LEVEL_MASK);
+        
+        Node result;
+        if (node == null) {
+            result = new Node(bit, new Object[] { entry });
+        } else {
+            int position = Integer.bitCount(node.bitmap & bit - 1);
+            if ((node.bitmap & bit) == 0) {
+                Object[] children = new Object[node.children.length + 1];
+                System.arraycopy(node.children, 0, children, 0, position);
+                children[position] = entry;
+                System.arraycopy(node.children, position, children, position + 1, node.children.length - position);
+                result = new Node(node.bitmap | bit, children);
+            } else {
+                Object[] children = node.children.clone();
+                children[position] = insertBelow(children[position], entry, shift + BITS_PER_LEVEL);
+                result = new Node(node.bitmap, children);
+            }
+        }
+        return result;
+    }
+    
+    private static Object insertBelow( Object child, Entry entry, int shift ) {
+        Object result;
+        if (child instanceof Node) {
+            result = insert((Node) child, entry, shift);
+        } else {
+            Entry existing = (Entry) child;
+            if (existing.key == entry.key) {
+                result = new Entry(entry.key, entry.stones, existing);
+            } else {
+                // Two different keys always differ in some bit, so they separate before the shift runs past 63.
+                result = insert(insert(null, existing, shift), entry, shift);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * @return whether any position in this history has the passed Zobrist key.  A {@code false} result proves that no
+     * position matches; a {@code true} result still needs {@link #contains(Board)}.
+     */
+    boolean containsKey( long key ) {
+        return find(key) != null;
+    }
+    
+    /**
+     * @return whether any position in this history is the same position as {@code board}
+     */
+    boolean contains( Board board ) {
+        boolean found = false;
+        for (Entry entry = find(board.zobrist()); !found && entry != null; entry = entry.next) {
+            found = entry.holds(board);
+        }
+        return found;
+    }
+    
+    // Returns the newest Entry with the passed key, or null.
+    private Entry find( long key ) {
+        Entry found = null;
+        Object child = root;
+        for (int shift = 0; child instanceof Node; shift += BITS_PER_LEVEL) {
+            Node node = (Node) child;
+            int bit = 1 << (int) (key >>> shift & LEVEL_MASK);
+            child = (node.bitmap & bit) != 0 ? node.children[Integer.bitCount(node.bitmap & bit - 1)] : null;
+        }
+        if (child != null && ((Entry) child).key == key) {
+            found = (Entry) child;
+        }
+        return found;
+    }
+}
@@ -0,0 +1,92 @@
+package com.sadakatsu.go.domain;
+
+/**
+ * RuleSet selects the rules under which a Game is played: which moves are legal and how a finished game is scored.
+ * Each rule set is described by a handful of switches, and Game uses them to skip work that the rules do not need.
+ * Rule sets with only the simple ko rule keep no position history at all.  Under them a move is checked against the
+ * single intersection that the previous capture made a ko, rather than against every earlier position.
+ */
+public enum RuleSet {
+    /**
+     * Area scoring with positional superko.  Suicide is illegal, dead stones are removed before counting, and White
+     * receives one point per handicap stone in addition to the compensation.  These were the only rules before
+     * RuleSet existed and remain the default.
+     */
+    CHINESE(true, false, false, true, true),
+    
+    /**
+     * Area scoring with positional superko.  A move that captures its own chain is legal as long as it does not repeat
+     * an earlier position, so single-stone suicide is never legal.  Every stone on the board counts as alive when the
+     * game is scored, and handicap stones earn no extra compensation.
+     */
+    TROMP_TAYLOR(true, true, false, false, false),
+    
+    /**
+     * Territory scoring with the simple ko rule.  Each player counts the empty intersections that only their stones
+     * surround plus the stones they have captured, including the dead stones removed at the end of the game.  Suicide
+     * is illegal.
+     */
+    JAPANESE(false, false, true, true, false),
+    
+    /**
+     * The Chinese rules with positional superko replaced by the simple ko rule.  A position may recur through a longer
+     * cycle, which makes this the cheapest rule set for playouts.
+     */
+    SIMPLE_KO(false, false, false, true, true);
+    
+    private final boolean positionalSuperko;
+    private final boolean suicideAllowed;
+    private final boolean territoryScoring;
+    private final boolean deadStonesRemoved;
+    private final boolean handicapCompensated;
+    
+    private RuleSet(
+        boolean positionalSuperko,
+        boolean suicideAllowed,
+        boolean territoryScoring,
+        boolean deadStonesRemoved,
+        boolean handicapCompensated
+    ) {
+        this.positionalSuperko = positionalSuperko;
+        this.suicideAllowed = suicideAllowed;
+        this.territoryScoring = territoryScoring;
+        this.deadStonesRemoved = deadStonesRemoved;
+        this.handicapCompensated = handicapCompensated;
+    }
+    
+    /**
+     * @return whether a move may not recreate any earlier position.  Otherwise only the simple ko rule applies: a move
+     * may not immediately retake a single stone that has just captured a single stone.
+     */
+    boolean usesPositionalSuperko() {
+        return positionalSuperko;
+    }
+    
+    /**
+     * @return whether a move that leaves its own chain without liberties is legal, removing that chain
+     */
+    boolean allowsSuicide() {
+        return suicideAllowed;
+    }
+    
+    /**
+     * @return whether a finished game counts territory and captures instead of territory and stones
+     */
+    boolean scoresTerritory() {
+        return territoryScoring;
+    }
+    
+    /**
+     * @return whether Game.score() accepts dead groups to remove before counting
+     */
+    boolean removesDeadStones() {
+        return deadStonesRemoved;
+    }
+    
+    /**
+     * @return whether White receives a point for each handicap stone
+     */
+    boolean compensatesHandicap() {
+        return handicapCompensated;
+    }
+}
@@ -0,0 +1,109 @@
+package com.sadakatsu.go.domain;
+
+import java.util.Arrays;
+
+/**
+ * ScratchArena plays trial moves on a Board and takes them back again.  Game uses it to decide which empty
+ * intersections are legal for the next player: rather than copying the Board once per candidate, it plays each
+ * candidate on a single scratch copy, inspects the result, and calls {@link #undo(Board)} to restore the copy exactly,
+ * Zobrist key included.
+ * <p>
+ * The capture and liberty tests read the chains that the Board keeps up to date, so the arena only holds the sets of
+ * stones that a move removed.  It is not thread-safe; {@link #get()} hands each thread its own instance so that the
+ * buffers are allocated once per thread instead of once per test.
+ */
+final class ScratchArena {
+    private static final ThreadLocal<ScratchArena> ARENAS = ThreadLocal.withInitial(ScratchArena::new);
+    
+    static ScratchArena get() {
+        return ARENAS.get();
+    }
+    
+    private final long[] captured;
+    private final long[] selfCaptured;
+    
+    private int index;
+    private byte previousCode;
+    private byte player;
+    private byte opponent;
+    
+    private ScratchArena() {
+        this.captured = BitBoard.newSet();
+        this.selfCaptured = BitBoard.newSet();
+    }
+    
+    /**
+     * Places a stone of the passed player's code at index and removes every opposing chain that this leaves without a
+     * liberty.  The move is remembered so that undo() can take it back.
+     * @return the number of stones captured
+     */
+    int play( Board board, int index, byte player ) {
+        this.index = index;
+        this.previousCode = board.getCode(index);
+        this.player = player;
+        this.opponent = player == Board.BLACK_CODE ? Board.WHITE_CODE : Board.BLACK_CODE;
+        
+        board.setCode(index, player);
+        
+        // Two different opposing chains can never touch, so removing one cannot give another a liberty.  That lets all
+        // the captures be collected first and removed together.
+        Arrays.fill(captured, 0L);
+        Arrays.fill(selfCaptured, 0L);
+        for (int neighbor : Coordinate.getNeighborTable(board.getDimension())[index]) {
+            if (
+                board.getCode(neighbor) == opponent &&
+                board.getChainLiberties(neighbor) == 0 &&
+                !BitBoard.contains(captured, neighbor)
+            ) {
+                board.addChainTo(neighbor, captured);
+            }
+        }
+        
+        int captures = BitBoard.count(captured);
+        board.setCodes(captured, Board.EMPTY_CODE);
+        return captures;
+    }
+    
+    /**
+     * @return whether the chain containing the stone at index has at least one liberty
+     */
+    boolean hasLiberty( Board board, int index ) {
+        return board.getChainLiberties(index) > 0;
+    }
+    
+    /**
+     * Removes the chain containing the stone that the last call to play() placed, for rule sets that let a move
+     * capture its own stones.  The caller must already know that the chain has no liberties.  undo() restores the
+     * chain as well.
+     * @return the number of stones removed
+     */
+    int removeOwnChain( Board board ) {
+        board.addChainTo(index, selfCaptured);
+        board.setCodes(selfCaptured, Board.EMPTY_CODE);
+        return BitBoard.count(selfCaptured);
+    }
+    
+    /**
+     * @return the stones captured by the last call to play().  The set is overwritten by the next call.
+     */
+    long[] getCaptured() {
+        return captured;
+    }
+    
+    /**
+     * @return the player's own stones removed by removeOwnChain() since the last call to play().  The set is
+     * overwritten by the next call.
+     */
+    long[] getSelfCaptured() {
+        return selfCaptured;
+    }
+    
+    /**
+     * Takes back the last move made by play(), which must have been made on the same Board.
+     */
+    void undo( Board board ) {
+        board.setCodes(selfCaptured, player);
+        board.setCodes(captured, opponent);
+        board.setCode(index, previousCode);
+    }
+}
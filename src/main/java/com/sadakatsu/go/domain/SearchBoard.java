@@ -0,0 +1,405 @@
+package com.sadakatsu.go.domain;
+
+import static com.sadakatsu.go.domain.Pass.PASS;
+import static com.sadakatsu.go.domain.intersection.Stone.BLACK;
+import static com.sadakatsu.go.domain.intersection.Stone.WHITE;
+
+import java.util.Arrays;
+
+import com.sadakatsu.go.domain.intersection.Intersection;
+import com.sadakatsu.go.domain.intersection.Player;
+
+/**
+ * A SearchBoard is a mutable companion to Game for search engines.  Game allocates a new Board, superko history and
+ * Game for every move, which is what a game record needs but far too much for reading out variations.  A SearchBoard
+ * applies a move in place with {@link #make(Move)} and records just enough to restore the exact prior state with
+ * {@link #unmake()}: the move, the stones it removed, the pass count, the ko point and the position it added to the
+ * superko history.  Neither method allocates once the internal stacks have grown to the depth of the search.
+ * <p>
+ * The rules are those of the {@link RuleSet} of the Game that the SearchBoard was created from, applied exactly as
+ * {@link Game#play(Move)} applies them.  A move must be made on an EMPTY intersection.  It may leave its own chain
+ * without liberties only if the rules allow suicide, in which case the chain is removed.  Under positional superko it
+ * may not recreate any earlier position of the game; under the simple ko rule it may only not retake a ko
+ * immediately, and no position history is kept at all.  Two consecutive passes end the game.  A SearchBoard is created
+ * from a Game with {@link #SearchBoard(Game)}, and {@link #toGame()} returns the immutable Game that results from
+ * playing the same moves on that original Game.
+ * <p>
+ * SearchBoard is not thread-safe.
+ */
+public final class SearchBoard {
+    private static final int PASS_INDEX = -1;
+    private static final int POSITION_WORDS = BitBoard.WORDS * 2;
+    
+    private final Board board;
+    private final Game origin;
+    private final boolean originIsOver;
+    private final int dimension;
+    private final RuleSet rules;
+    
+    private final long[] chain;
+    private final int[][] neighbors;
+    
+    // The positions of the origin Game are looked up in its own history.  Only the positions that this SearchBoard
+    // has reached since then are kept here, as a stack that unmake() pops.
+    private final PositionHistory gameHistory;
+    private long[] historyKeys;
+    private long[] historyPositions;
+    private int historySize;
+    
+    // The undo stack.  The stones a move removed are captured[capturesStart[i]] up to the next move's start; they
+    // belong to the player who made the move if suicides[i] is set and to the opponent otherwise.
+    private int[] moves;
+    private int[] capturesStart;
+    private int[] passesBefore;
+    private int[] koPointsBefore;
+    private boolean[] suicides;
+    private int[] captured;
+    private int capturedSize;
+    private int movesMade;
+    
+    private byte currentPlayer;
+    private int capturesByBlack;
+    private int capturesByWhite;
+    private int consecutivePasses;
+    
+    // The intersection where the current player would immediately retake a ko, or -1.  It is only ever set under the
+    // simple ko rule; positional superko catches the retake through the history instead.
+    private int koPoint;
+    
+    /**
+     * Creates a SearchBoard positioned at the passed Game that plays by the Game's RuleSet.  Under positional superko
+     * the Game's position history is consulted as well so that superko is judged exactly as the Game would judge it.
+     * @param game the Game from which to start searching
+     * @throws IllegalArgumentException if {@code game} is {@code null}
+     */
+    public SearchBoard( Game game ) {
+        if (game == null) {
+            throw new IllegalArgumentException("A SearchBoard requires a non-null Game.");
+        }
+        
+        this.origin = game;
+        this.originIsOver = game.isOver();
+        this.dimension = game.getDimension();
+        this.rules = game.getRuleSet();
+        this.board = new Board(game.getBoard());
+        for (int index = 0; index < dimension * dimension; ++index) {
+            if (board.getCode(index) == Board.TEMPORARILY_UNPLAYABLE_CODE) {
+                board.setCode(index, Board.EMPTY_CODE);
+            }
+        }
+        
+        this.chain = BitBoard.newSet();
+        this.neighbors = Coordinate.getNeighborTable(dimension);
+        
+        int capacity = dimension * dimension * 2 + 2;
+        this.gameHistory = game.getPositionHistory();
+        this.historyKeys = new long[capacity];
+        this.historyPositions = new long[historyKeys.length * POSITION_WORDS];
+        this.historySize = 0;
+        if (rules.usesPositionalSuperko() && !gameHistory.contains(board)) {
+            pushPosition(board);
+        }
+        
+        this.moves = new int[capacity];
+        this.capturesStart = new int[capacity];
+        this.passesBefore = new int[capacity];
+        this.koPointsBefore = new int[capacity];
+        this.suicides = new boolean[capacity];
+        this.captured = new int[capacity];
+        this.capturedSize = 0;
+        this.movesMade = 0;
+        
+        this.capturesByBlack = game.getCapturesFor(BLACK);
+        this.capturesByWhite = game.getCapturesFor(WHITE);
+        if (originIsOver) {
+            this.currentPlayer = Board.BLACK_CODE;
+            this.consecutivePasses = 0;
+        } else {
+            this.currentPlayer = Board.encode((Intersection) game.getCurrentPlayer());
+            this.consecutivePasses = game.wouldPassEndGame() ? 1 : 0;
+        }
+        this.koPoint = game.getKoPoint();
+    }
+    
+    /**
+     * Plays the passed move for the current player if it is legal.  An illegal move (an occupied intersection, a
+     * self-capture that the rules forbid, an immediate ko retake or a repeated position) leaves the SearchBoard
+     * unchanged.
+     * @param move either {@code Pass.PASS} or a Coordinate on this board
+     * @return {@code true} if the move was legal and has been made, {@code false} if it was illegal
+     * @throws IllegalArgumentException if {@code move} is {@code null}, is not a Coordinate or Pass, or is a Coordinate
+     * that is off the board
+     * @throws IllegalStateException if the game is over
+     */
+    public boolean make( Move move ) {
+        if (isOver()) {
+            throw new IllegalStateException("This game is over; no further moves may be made (including passes).");
+        }
+        
+        boolean made;
+        if (PASS == move) {
+            makePass();
+            made = true;
+        } else if (move instanceof Coordinate) {
+            made = makeMove(board.indexOf((Coordinate) move));
+        } else {
+            throw new IllegalArgumentException(
+                "SearchBoard.make() accepts only Pass.PASS or a Coordinate that is on the board.  Received " + move
+            );
+        }
+        return made;
+    }
+    
+    private void makePass() {
+        pushUndo(PASS_INDEX);
+        if (rules.usesPositionalSuperko()) {
+            pushPosition(board);
+        }
+        ++consecutivePasses;
+        koPoint = -1;
+        currentPlayer = opposite(currentPlayer);
+    }
+    
+    private boolean makeMove( int index ) {
+        boolean legal = board.getCode(index) == Board.EMPTY_CODE && index != koPoint;
+        if (legal && movesMade == 0) {
+            // The origin Game has already marked its illegal moves, and its first position after construction uses a
+            // slightly different test than every later position.  Deferring to it keeps the two in lockstep.
+            legal = origin.getBoard().getCode(index) == Board.EMPTY_CODE;
+        }
+        
+        if (legal) {
+            pushUndo(index);
+            board.setCode(index, currentPlayer);
+            int captures = removeCaptures(index);
+            
+            if (captures == 0 && board.getChainLiberties(index) == 0) {
+                if (rules.allowsSuicide()) {
+                    removeOwnChain(index);
+                } else {
+                    legal = false;
+                }
+            }
+            if (legal && rules.usesPositionalSuperko() && positionHasBeenPlayedBefore()) {
+                legal = false;
+            }
+            
+            if (legal) {
+                if (rules.usesPositionalSuperko()) {
+                    pushPosition(board);
+                } else {
+                    koPoint = Game.findKoPoint(board, index, captures, chain);
+                }
+                addCaptures(currentPlayer, captures);
+                consecutivePasses = 0;
+                currentPlayer = opposite(currentPlayer);
+            } else {
+                restore();
+            }
+        }
+        
+        return legal;
+    }
+    
+    private void pushUndo( int index ) {
+        if (movesMade == moves.length) {
+            int length = moves.length * 2;
+            moves = Arrays.copyOf(moves, length);
+            capturesStart = Arrays.copyOf(capturesStart, length);
+            passesBefore = Arrays.copyOf(passesBefore, length);
+            koPointsBefore = Arrays.copyOf(koPointsBefore, length);
+            suicides = Arrays.copyOf(suicides, length);
+        }
+        moves[movesMade] = index;
+        capturesStart[movesMade] = capturedSize;
+        passesBefore[movesMade] = consecutivePasses;
+        koPointsBefore[movesMade] = koPoint;
+        suicides[movesMade] = false;
+        ++movesMade;
+    }
+    
+    private int removeCaptures( int index ) {
+        byte opponent = opposite(currentPlayer);
+        int start = capturedSize;
+        
+        Arrays.fill(chain, 0L);
+        for (int neighbor : neighbors[index]) {
+            if (
+                board.getCode(neighbor) == opponent &&
+                board.getChainLiberties(neighbor) == 0 &&
+                !BitBoard.contains(chain, neighbor)
+            ) {
+                board.addChainTo(neighbor, chain);
+            }
+        }
+        for (int stone = BitBoard.next(chain, 0); stone >= 0; stone = BitBoard.next(chain, stone + 1)) {
+            pushCaptured(stone);
+        }
+        board.setCodes(chain, Board.EMPTY_CODE);
+        
+        return capturedSize - start;
+    }
+    
+    // Removes the chain of the stone just placed at index, which the caller knows has no liberties, and records it as
+    // the move's own removed stones.  The removed stones are not counted as captures for either player.
+    private void removeOwnChain( int index ) {
+        Arrays.fill(chain, 0L);
+        board.addChainTo(index, chain);
+        for (int stone = BitBoard.next(chain, 0); stone >= 0; stone = BitBoard.next(chain, stone + 1)) {
+            pushCaptured(stone);
+        }
+        board.setCodes(chain, Board.EMPTY_CODE);
+        suicides[movesMade - 1] = true;
+    }
+    
+    private void pushCaptured( int index ) {
+        if (capturedSize == captured.length) {
+            captured = Arrays.copyOf(captured, captured.length * 2);
+        }
+        captured[capturedSize++] = index;
+    }
+    
+    private boolean positionHasBeenPlayedBefore() {
+        boolean found = false;
+        long key = board.zobrist();
+        for (int i = historySize - 1; !found && i >= 0; --i) {
+            found = historyKeys[i] == key && isCurrentPosition(i);
+        }
+        return found || gameHistory.contains(board);
+    }
+    
+    // The Zobrist keys only short-circuit the search; a hit is confirmed against the stored stones so that a hash
+    // collision can never make a legal move illegal.
+    private boolean isCurrentPosition( int entry ) {
+        BitBoard bitBoard = board.getBitBoard();
+        long[] black = bitBoard.getBlack();
+        long[] white = bitBoard.getWhite();
+        int offset = entry * POSITION_WORDS;
+        boolean same = true;
+        for (int i = 0; same && i < BitBoard.WORDS; ++i) {
+            same =
+                historyPositions[offset + i] == black[i] &&
+                historyPositions[offset + BitBoard.WORDS + i] == white[i];
+        }
+        return same;
+    }
+    
+    private void pushPosition( Board position ) {
+        if (historySize == historyKeys.length) {
+            historyKeys = Arrays.copyOf(historyKeys, historyKeys.length * 2);
+            historyPositions = Arrays.copyOf(historyPositions, historyKeys.length * POSITION_WORDS);
+        }
+        BitBoard bitBoard = position.getBitBoard();
+        int offset = historySize * POSITION_WORDS;
+        System.arraycopy(bitBoard.getBlack(), 0, historyPositions, offset, BitBoard.WORDS);
+        System.arraycopy(bitBoard.getWhite(), 0, historyPositions, offset + BitBoard.WORDS, BitBoard.WORDS);
+        historyKeys[historySize++] = position.zobrist();
+    }
+    
+    private void addCaptures( byte player, int captures ) {
+        if (player == Board.BLACK_CODE) {
+            capturesByBlack += captures;
+        } else {
+            capturesByWhite += captures;
+        }
+    }
+    
+    /**
+     * Restores the state from before the most recent successful {@link #make(Move)}.
+     * @throws IllegalStateException if no move has been made since this SearchBoard was created
+     */
+    public void unmake() {
+        if (movesMade == 0) {
+            throw new IllegalStateException("There is no move to unmake.");
+        }
+        
+        if (rules.usesPositionalSuperko()) {
+            --historySize;
+        }
+        currentPlayer = opposite(currentPlayer);
+        
+        if (!suicides[movesMade - 1]) {
+            addCaptures(currentPlayer, capturesStart[movesMade - 1] - capturedSize);
+        }
+        restore();
+    }
+    
+    // Takes back the top undo entry for the player whose turn it currently is.
+    private void restore() {
+        --movesMade;
+        int index = moves[movesMade];
+        if (index != PASS_INDEX) {
+            byte owner = suicides[movesMade] ? currentPlayer : opposite(currentPlayer);
+            int start = capturesStart[movesMade];
+            Arrays.fill(chain, 0L);
+            while (capturedSize > start) {
+                BitBoard.add(chain, captured[--capturedSize]);
+            }
+            board.setCodes(chain, owner);
+            board.setCode(index, Board.EMPTY_CODE);
+        }
+        consecutivePasses = passesBefore[movesMade];
+        koPoint = koPointsBefore[movesMade];
+    }
+    
+    private static byte opposite( byte player ) {
+        return player == Board.BLACK_CODE ? Board.WHITE_CODE : Board.BLACK_CODE;
+    }
+    
+    /**
+     * @return the Game that results from playing every move currently made on this SearchBoard, in order, on the Game
+     * from which it was created
+     */
+    public Game toGame() {
+        Game game = origin;
+        for (int i = 0; i < movesMade; ++i) {
+            int index = moves[i];
+            game = game.play(index == PASS_INDEX ? PASS : board.coordinateAt(index));
+        }
+        return game;
+    }
+    
+    public Intersection get( Coordinate coordinate ) {
+        return Board.decode(board.getCode(board.indexOf(coordinate)));
+    }
+    
+    public Player getCurrentPlayer() {
+        if (isOver()) {
+            throw new IllegalStateException("Only a game that is in progress has a current player.");
+        }
+        return (Player) Board.decode(currentPlayer);
+    }
+    
+    public int getCapturesFor( Player player ) {
+        int value = 0;
+        
+        if (BLACK == player) {
+            value = capturesByBlack;
+        } else if (WHITE == player) {
+            value = capturesByWhite;
+        } else {
+            throw new IllegalArgumentException("The passed Player must be either Stone.BLACK or Stone.WHITE.");
+        }
+        
+        return value;
+    }
+    
+    public int getDimension() {
+        return dimension;
+    }
+    
+    public int getMovesMade() {
+        return movesMade;
+    }
+    
+    public boolean isOver() {
+        return originIsOver || consecutivePasses > 1;
+    }
+    
+    /**
+     * @return the Zobrist key of the current position; see {@link Board#zobrist()}
+     */
+    public long zobrist() {
+        return board.zobrist();
+    }
+}
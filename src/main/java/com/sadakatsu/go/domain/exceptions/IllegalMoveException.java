@@ -0,0 +1,27 @@
+package com.sadakatsu.go.domain.exceptions;
+
+import com.sadakatsu.go.domain.Move;
+
+public class IllegalMoveException extends IllegalArgumentException {
+    private static final long serialVersionUID = -4803129175617630714L;
+    
+    private final int index;
+    private final Move move;
+    
+    public IllegalMoveException( int index, Move move, String reason ) {
+        super(String.format("Move %d (%s) is illegal: %s.", index, move, reason));
+        this.index = index;
+        this.move = move;
+    }
+    
+    /**
+     * @return the position of the illegal Move in the sequence that was being played, counting from 0
+     */
+    public int getIndex() {
+        return index;
+    }
+    
+    public Move getMove() {
+        return move;
+    }
+}
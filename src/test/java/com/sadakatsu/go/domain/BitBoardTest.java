@@ -0,0 +1,62 @@
+package com.sadakatsu.go.domain;
+
+import static com.sadakatsu.go.domain.intersection.Stone.BLACK;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class BitBoardTest {
+    @Test
+    public void dilatingASinglePointAddsExactlyItsNeighbors() {
+        for (int dimension = 1; dimension <= 19; ++dimension) {
+            Board board = new Board(dimension);
+            for (Coordinate coordinate : Coordinate.iterateOverBoard(dimension)) {
+                long[] expected = BitBoard.newSet();
+                BitBoard.add(expected, board.indexOf(coordinate));
+                for (Coordinate neighbor : coordinate.getNeighbors(dimension)) {
+                    BitBoard.add(expected, board.indexOf(neighbor));
+                }
+                
+                long[] actual = BitBoard.newSet();
+                BitBoard.add(actual, board.indexOf(coordinate));
+                BitBoard.dilate(actual, actual, dimension);
+                
+                assertArrayEquals(
+                    String.format("Dilating %s on a %dx%d board", coordinate, dimension, dimension),
+                    expected,
+                    actual
+                );
+            }
+        }
+    }
+    
+    @Test
+    public void floodFillStopsAtTheEdgeOfTheRegion() {
+        Board board = new Board(9);
+        for (int row = 1; row <= 9; ++row) {
+            board.set(Coordinate.get(5, row), BLACK);
+        }
+        
+        long[] region = BitBoard.newSet();
+        BitBoard.add(region, board.indexOf(Coordinate.C01_R01));
+        BitBoard.floodFill(region, board.getBitBoard().getEmpty(), BitBoard.newSet(), 9);
+        
+        assertEquals(36, BitBoard.count(region));
+        assertFalse(BitBoard.contains(region, board.indexOf(Coordinate.C06_R01)));
+    }
+    
+    @Test
+    public void nextVisitsEveryMemberInOrder() {
+        long[] set = BitBoard.newSet();
+        int[] members = { 0, 1, 63, 64, 127, 200, 360 };
+        for (int member : members) {
+            BitBoard.add(set, member);
+        }
+        
+        int found = 0;
+        for (int index = BitBoard.next(set, 0); index >= 0; index = BitBoard.next(set, index + 1)) {
+            assertEquals(members[found++], index);
+        }
+        assertEquals(members.length, found);
+    }
+}
@@ -352,6 +352,113 @@ public class BoardTest {
         return INTERSECTIONS[index];
     }
     
+    @Test
+    public void setCodeAndSetAreInterchangeable() {
+        for (int dimension : VALID_SIZES) {
+            Board expected = buildRandomBoard(dimension);
+            Board actual = new Board(dimension);
+            for (Coordinate coordinate : Coordinate.iterateOverBoard(dimension)) {
+                int index = actual.indexOf(coordinate);
+                actual.setCode(index, Board.encode(expected.get(coordinate)));
+                assertEquals(expected.get(coordinate), Board.decode(actual.getCode(index)));
+            }
+            assertEquals(expected, actual);
+            assertTrue(expected.isSamePositionAs(actual));
+            assertEquals(expected.countNonEmptyIntersections(), actual.countNonEmptyIntersections());
+        }
+    }
+    
+    @Test
+    public void paddedBoardsBehaveLikeCompactBoards() {
+        for (int dimension : VALID_SIZES) {
+            Board compact = buildRandomBoard(dimension);
+            Board padded = new Board(dimension, BoardLayout.PADDED);
+            for (Coordinate coordinate : Coordinate.iterateOverBoard(dimension)) {
+                padded.set(coordinate, compact.get(coordinate));
+            }
+            
+            assertEquals(BoardLayout.PADDED, padded.getLayout());
+            assertEquals(BoardLayout.PADDED, new Board(padded).getLayout());
+            assertEquals(compact, padded);
+            assertEquals(padded, compact);
+            assertEquals(compact.hashCode(), padded.hashCode());
+            assertEquals(compact.toString(), padded.toString());
+            assertTrue(padded.isSamePositionAs(compact));
+            for (int index = 0; index < dimension * dimension; ++index) {
+                assertEquals(compact.getCode(index), padded.getCode(index));
+                assertEquals(compact.isAdjacentToLiberty(index), padded.isAdjacentToLiberty(index));
+            }
+        }
+    }
+    
+    @Test
+    public void copiesDoNotSeeEachOthersChanges() {
+        for (int dimension = 2; dimension <= 19; ++dimension) {
+            for (BoardStorage storage : BoardStorage.values()) {
+                Board parent = new Board(dimension, BoardLayout.PADDED, storage);
+                Board child = new Board(parent);
+                Board grandchild = new Board(child);
+                assertEquals(storage, grandchild.getStorage());
+                
+                Coordinate corner = Coordinate.get(dimension, dimension);
+                child.set(Coordinate.C01_R01, BLACK);
+                parent.set(corner, WHITE);
+                
+                assertEquals(BLACK, child.get(Coordinate.C01_R01));
+                assertEquals(EMPTY, parent.get(Coordinate.C01_R01));
+                assertEquals(EMPTY, grandchild.get(Coordinate.C01_R01));
+                assertEquals(WHITE, parent.get(corner));
+                assertEquals(EMPTY, child.get(corner));
+                assertEquals(EMPTY, grandchild.get(corner));
+                assertEquals(new Board(dimension), grandchild);
+            }
+        }
+    }
+    
+    @Test
+    public void copiesTakenOnSeveralThreadsLeaveTheSourceUnchanged() throws InterruptedException {
+        Board source = new Board(19, BoardLayout.PADDED, BoardStorage.CHUNKED);
+        for (Coordinate coordinate : Coordinate.iterateOverBoard(19)) {
+            if (coordinate.getColumn() % 3 == 0) {
+                source.set(coordinate, coordinate.getRow() % 2 == 0 ? BLACK : WHITE);
+            }
+        }
+        Board expected = new Board(source);
+        
+        Board[] copies = new Board[8];
+        Thread[] threads = new Thread[copies.length];
+        for (int i = 0; i < threads.length; ++i) {
+            int thread = i;
+            threads[i] = new Thread(() -> {
+                for (int round = 0; round < 100; ++round) {
+                    Board copy = new Board(source);
+                    for (Coordinate coordinate : Coordinate.iterateOverBoard(19)) {
+                        if (copy.get(coordinate) == EMPTY && (coordinate.getRow() + thread) % 4 == 0) {
+                            copy.set(coordinate, thread % 2 == 0 ? BLACK : WHITE);
+                        }
+                    }
+                    copies[thread] = copy;
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertEquals(expected, source);
+        assertEquals(expected.zobrist(), source.zobrist());
+        for (int i = 0; i < copies.length; ++i) {
+            for (Coordinate coordinate : Coordinate.iterateOverBoard(19)) {
+                Intersection intersection = expected.get(coordinate);
+                if (intersection == EMPTY && (coordinate.getRow() + i) % 4 == 0) {
+                    intersection = i % 2 == 0 ? BLACK : WHITE;
+                }
+                assertEquals(intersection, copies[i].get(coordinate));
+            }
+        }
+    }
+    
     @Test
     public void aBoardIsEqualToItself() {
         for (int dimension : VALID_SIZES) {
@@ -526,6 +633,156 @@ public class BoardTest {
         }
     }
     
+    @Test
+    public void zobristIsTheSameForBoardsWithTheSamePosition() {
+        for (int dimension : VALID_SIZES) {
+            Board first = new Board(dimension);
+            Board second = new Board(dimension);
+            for (Coordinate coordinate : Coordinate.iterateOverBoard(dimension)) {
+                Intersection value = getRandomIntersection();
+                first.set(coordinate, value);
+                second.set(coordinate, value == EMPTY ? TEMPORARILY_UNPLAYABLE : value);
+            }
+            assertEquals(first.zobrist(), second.zobrist());
+            assertEquals(first.zobrist(), new Board(first).zobrist());
+        }
+    }
+    
+    @Test
+    public void zobristIsRestoredWhenASetIsUndone() {
+        for (int dimension : VALID_SIZES) {
+            Board board = buildRandomBoard(dimension);
+            long original = board.zobrist();
+            for (Coordinate coordinate : Coordinate.iterateOverBoard(dimension)) {
+                Intersection previous = board.get(coordinate);
+                for (Intersection intersection : INTERSECTIONS) {
+                    board.set(coordinate, intersection);
+                    if (previous.countsAsLiberty() != intersection.countsAsLiberty()) {
+                        assertNotEquals(original, board.zobrist());
+                    }
+                    board.set(coordinate, previous);
+                    assertEquals(original, board.zobrist());
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void emptyBoardsOfDifferentSizesHaveDifferentZobristKeys() {
+        Set<Long> keys = Sets.newHashSet();
+        for (int dimension : VALID_SIZES) {
+            keys.add(new Board(dimension).zobrist());
+        }
+        assertEquals(VALID_SIZES.length, keys.size());
+    }
+    
+    @Test
+    public void placingAStoneMergesTheChainsBesideIt() {
+        Board board = new Board(5);
+        board.set(C01_R01, BLACK);
+        board.set(C03_R01, BLACK);
+        int left = board.indexOf(C01_R01);
+        int right = board.indexOf(C03_R01);
+        assertNotEquals(board.getChainRoot(left), board.getChainRoot(right));
+        
+        board.set(C03_R02, WHITE);
+        assertEquals(2, board.getChainLiberties(left));
+        assertEquals(2, board.getChainLiberties(right));
+        
+        board.set(C02_R01, BLACK);
+        int white = board.indexOf(C03_R02);
+        assertEquals(board.getChainRoot(left), board.getChainRoot(right));
+        assertEquals(3, board.getChainSize(right));
+        assertEquals(3, board.getChainLiberties(left));
+        assertEquals(1, board.getChainSize(white));
+        assertEquals(3, board.getChainLiberties(white));
+        
+        board.set(C04_R01, WHITE);
+        board.set(C02_R02, WHITE);
+        assertTrue(board.isChainInAtari(left));
+        assertEquals(board.indexOf(C01_R02), board.getChainLastLiberty(right));
+        assertEquals(-1, board.getChainLastLiberty(white));
+        
+        long[] chain = BitBoard.newSet();
+        board.addChainTo(left, chain);
+        board.setCodes(chain, Board.EMPTY_CODE);
+        assertEquals(-1, board.getChainRoot(left));
+        assertEquals(6, board.getChainLiberties(white));
+    }
+    
+    @Test
+    public void chainsMatchAFloodFillAfterEveryChange() {
+        Random random = new Random(21);
+        byte[] codes = {
+            Board.BLACK_CODE,
+            Board.WHITE_CODE,
+            Board.BLACK_CODE,
+            Board.WHITE_CODE,
+            Board.EMPTY_CODE,
+            Board.TEMPORARILY_UNPLAYABLE_CODE,
+            Board.PERMANENTLY_UNPLAYABLE_CODE
+        };
+        for (int dimension : new int[] { 1, 2, 5, 9, 19 }) {
+            for (BoardLayout layout : BoardLayout.values()) {
+                Board board = new Board(dimension, layout, BoardStorage.CHUNKED);
+                Board copy = new Board(board);
+                for (int step = 0; step < 400; ++step) {
+                    int index = random.nextInt(dimension * dimension);
+                    if (step % 20 == 19 && board.getChainRoot(index) >= 0) {
+                        long[] chain = BitBoard.newSet();
+                        board.addChainTo(index, chain);
+                        board.setCodes(chain, codes[random.nextInt(codes.length)]);
+                    } else {
+                        board.setCode(index, codes[random.nextInt(codes.length)]);
+                    }
+                    if (step % 10 == 9) {
+                        assertChainsMatchAFloodFill(copy);
+                        Board next = new Board(board);
+                        copy = board;
+                        board = next;
+                    }
+                    assertChainsMatchAFloodFill(board);
+                }
+            }
+        }
+    }
+    
+    private static void assertChainsMatchAFloodFill( Board board ) {
+        int dimension = board.getDimension();
+        BitBoard bitBoard = board.getBitBoard();
+        long[] chain = BitBoard.newSet();
+        long[] liberties = BitBoard.newSet();
+        long[] scratch = BitBoard.newSet();
+        for (int index = 0; index < dimension * dimension; ++index) {
+            byte code = board.getCode(index);
+            if (code == Board.BLACK_CODE || code == Board.WHITE_CODE) {
+                Arrays.fill(chain, 0L);
+                BitBoard.add(chain, index);
+                BitBoard.floodFill(chain, code == Board.BLACK_CODE ? bitBoard.getBlack() : bitBoard.getWhite(), scratch,
+                    dimension);
+                BitBoard.dilate(chain, liberties, dimension);
+                BitBoard.retainAll(liberties, bitBoard.getEmpty());
+                
+                assertTrue(BitBoard.contains(chain, board.getChainRoot(index)));
+                assertEquals(BitBoard.count(chain), board.getChainSize(index));
+                assertEquals(BitBoard.count(liberties), board.getChainLiberties(index));
+                assertEquals(BitBoard.count(liberties) == 1, board.isChainInAtari(index));
+                assertEquals(
+                    BitBoard.count(liberties) == 1 ? BitBoard.next(liberties, 0) : -1,
+                    board.getChainLastLiberty(index)
+                );
+                long[] tracked = BitBoard.newSet();
+                board.addChainLibertiesTo(index, tracked);
+                assertArrayEquals(liberties, tracked);
+                for (int stone = BitBoard.next(chain, 0); stone >= 0; stone = BitBoard.next(chain, stone + 1)) {
+                    assertEquals(board.getChainRoot(index), board.getChainRoot(stone));
+                }
+            } else {
+                assertEquals(-1, board.getChainRoot(index));
+            }
+        }
+    }
+    
     // I do not want to write comprehensive unit tests for hashCode() or toString().  hashCode() is almost completely
     // tested by the current tests; all that is missing is testing a branch for illegal intersection values that should
     // never get set (as verified by the above tests).  toString() is a convenient string representation to aid
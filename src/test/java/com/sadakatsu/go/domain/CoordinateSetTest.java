@@ -0,0 +1,150 @@
+package com.sadakatsu.go.domain;
+
+import static com.sadakatsu.go.domain.Coordinate.*;
+import static com.sadakatsu.util.TestHelper.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class CoordinateSetTest {
+    private static Set<Coordinate> randomCoordinates( Random random, int dimension ) {
+        Set<Coordinate> result = new HashSet<>();
+        for (Coordinate coordinate : Coordinate.iterateOverBoard(dimension)) {
+            if (random.nextBoolean()) {
+                result.add(coordinate);
+            }
+        }
+        return result;
+    }
+    
+    @Test
+    public void coordinateSetsBehaveLikeHashSets() {
+        Random random = new Random(24);
+        for (int dimension = 1; dimension <= 19; ++dimension) {
+            for (int trial = 0; trial < 10; ++trial) {
+                Set<Coordinate> first = randomCoordinates(random, dimension);
+                Set<Coordinate> second = randomCoordinates(random, dimension);
+                CoordinateSet set = new CoordinateSet(dimension, first);
+                CoordinateSet other = new CoordinateSet(dimension, second);
+                
+                assertEquals(first, set);
+                assertEquals(set, first);
+                assertEquals(first.hashCode(), set.hashCode());
+                assertEquals(first.size(), set.size());
+                assertEquals(first.isEmpty(), set.isEmpty());
+                for (Coordinate coordinate : Coordinate.values()) {
+                    assertEquals(first.contains(coordinate), set.contains(coordinate));
+                }
+                
+                Set<Coordinate> union = new HashSet<>(first);
+                union.addAll(second);
+                Set<Coordinate> intersection = new HashSet<>(first);
+                intersection.retainAll(second);
+                assertEquals(union, set.union(other));
+                assertEquals(intersection, set.intersect(other));
+                assertEquals(first, set);
+                assertEquals(first.containsAll(second), set.containsAll(other));
+                assertTrue(set.union(other).containsAll(set));
+                
+                Set<Coordinate> difference = new HashSet<>(first);
+                difference.removeAll(second);
+                CoordinateSet removed = new CoordinateSet(set);
+                assertEquals(!difference.equals(first), removed.removeAll(other));
+                assertEquals(difference, removed);
+                assertEquals(!intersection.equals(first), set.retainAll(other));
+                assertEquals(intersection, set);
+                assertEquals(!union.equals(intersection), set.addAll(new ArrayList<>(union)));
+                assertEquals(union, set);
+            }
+        }
+    }
+    
+    @Test
+    public void coordinateSetsIterateInRowMajorOrder() {
+        CoordinateSet set = new CoordinateSet(5, Arrays.asList(C05_R05, C01_R02, C03_R01, C02_R02));
+        List<Coordinate> order = new ArrayList<>(set);
+        assertEquals(Arrays.asList(C03_R01, C01_R02, C02_R02, C05_R05), order);
+        
+        Iterator<Coordinate> iterator = set.iterator();
+        iterator.next();
+        iterator.remove();
+        assertEquals(new HashSet<>(Arrays.asList(C01_R02, C02_R02, C05_R05)), set);
+        try {
+            iterator.remove();
+            fail("A second remove() without next() should throw IllegalStateException.");
+        } catch (IllegalStateException e) {
+            // success
+        }
+    }
+    
+    @Test
+    public void coordinateSetsExposeTheirBoardIndices() {
+        CoordinateSet set = new CoordinateSet(9, Arrays.asList(C01_R01, C09_R09, C02_R08));
+        long[] words = set.toLongArray();
+        assertEquals(CoordinateSet.WORDS, words.length);
+        assertEquals(3, BitBoard.count(words));
+        for (Coordinate coordinate : set) {
+            assertTrue(BitBoard.contains(words, coordinate.toIndex(9)));
+        }
+        
+        words[0] = 0L;
+        assertEquals(3, set.size());
+        assertEquals(set, CoordinateSet.fromWords(9, set.toLongArray()));
+    }
+    
+    @Test
+    public void coordinateSetsRejectCoordinatesOffTheirBoard() {
+        CoordinateSet set = new CoordinateSet(9);
+        for (Coordinate wrong : new Coordinate[] { null, C10_R01, C01_R10 }) {
+            try {
+                boolean result = set.add(wrong);
+                failForReturn("set.add", "IllegalArgumentException", result, wrong);
+            } catch (IllegalArgumentException e) {
+                // success
+            }
+            assertFalse(set.contains(wrong));
+            assertFalse(set.remove(wrong));
+        }
+        assertTrue(set.isEmpty());
+        
+        for (CoordinateSet wrong : new CoordinateSet[] { null, new CoordinateSet(13) }) {
+            try {
+                CoordinateSet result = set.union(wrong);
+                failForReturn("set.union", "IllegalArgumentException", result, wrong);
+            } catch (IllegalArgumentException e) {
+                // success
+            }
+        }
+        
+        for (int dimension : new int[] { 0, 20 }) {
+            try {
+                CoordinateSet result = new CoordinateSet(dimension);
+                failForReturn("new CoordinateSet", "IllegalArgumentException", result, dimension);
+            } catch (IllegalArgumentException e) {
+                // success
+            }
+        }
+    }
+    
+    @Test
+    public void coordinateSetsOfDifferentDimensionsWithTheSameMembersAreEqual() {
+        CoordinateSet small = new CoordinateSet(9, Arrays.asList(C01_R01, C09_R09));
+        CoordinateSet large = new CoordinateSet(19, small);
+        assertEquals(small, large);
+        assertEquals(small.hashCode(), large.hashCode());
+        assertTrue(large.containsAll(small));
+        
+        large.add(C19_R19);
+        assertNotEquals(small, large);
+        assertTrue(large.retainAll(small));
+        assertEquals(small, large);
+    }
+}
@@ -598,6 +598,66 @@ public class CoordinateTest {
         }
     }
     
+    @Test
+    public void getNeighborTableListsTheSameNeighborsAsGetNeighbors() {
+        for (int maxComponent = 1; maxComponent <= 19; ++maxComponent) {
+            int[][] table = Coordinate.getNeighborTable(maxComponent);
+            assertEquals(maxComponent * maxComponent, table.length);
+            for (Coordinate coordinate : Coordinate.iterateOverBoard(maxComponent)) {
+                int index = (coordinate.getRow() - 1) * maxComponent + coordinate.getColumn() - 1;
+                Set<Coordinate> actual = new HashSet<>();
+                for (int neighbor : table[index]) {
+                    actual.add(Coordinate.get(neighbor % maxComponent + 1, neighbor / maxComponent + 1));
+                }
+                assertEquals(Sets.newHashSet(coordinate.getNeighbors(maxComponent)), actual);
+            }
+        }
+    }
+    
+    @Test
+    public void fromIndexAndToIndexAreInversesForEveryBoardSize() {
+        for (int maxComponent = 1; maxComponent <= 19; ++maxComponent) {
+            int index = 0;
+            for (Coordinate coordinate : Coordinate.iterateOverBoard(maxComponent)) {
+                assertEquals(index, coordinate.toIndex(maxComponent));
+                assertEquals(coordinate, Coordinate.fromIndex(index, maxComponent));
+                ++index;
+            }
+        }
+    }
+    
+    @Test
+    public void fromIndexAndToIndexThrowExceptionsForPositionsOffTheBoard() {
+        int[][] invalidIndices = { { -1, 9 }, { 81, 9 }, { 0, 0 }, { 0, 20 } };
+        for (int[] pair : invalidIndices) {
+            try {
+                Coordinate wrong = Coordinate.fromIndex(pair[0], pair[1]);
+                failFormat(
+                    "Coordinate.fromIndex(%d, %d) should throw an IllegalArgumentException, but instead it returned %s.",
+                    pair[0],
+                    pair[1],
+                    wrong
+                );
+            } catch (IllegalArgumentException e) {
+                // success
+            }
+        }
+        
+        int[] invalidMaxComponents = { 0, 9, 20 };
+        for (int maxComponent : invalidMaxComponents) {
+            try {
+                int wrong = Coordinate.C10_R01.toIndex(maxComponent);
+                failFormat(
+                    "C10_R01.toIndex(%d) should throw an IllegalArgumentException, but instead it returned %d.",
+                    maxComponent,
+                    wrong
+                );
+            } catch (IllegalArgumentException e) {
+                // success
+            }
+        }
+    }
+    
     @Test
     public void getReturnsCoordinateThatMatchesArguments() {
         for (Coordinate expected : COORDINATES) {
@@ -808,4 +808,44 @@ public class GameBuilderTest {
             }
         }
     }
+    
+    @Test
+    public void gameBuildersDefaultToTheChineseRules() {
+        for (int dimension : VALID_DIMENSIONS) {
+            GameBuilder builder = Game.newBuilder(dimension);
+            assertEquals(RuleSet.CHINESE, builder.getRuleSet());
+            assertEquals(RuleSet.CHINESE, builder.build().getRuleSet());
+        }
+    }
+    
+    @Test
+    public void setRuleSetRejectsNullAndIsReflectedInTheBuiltGame() {
+        GameBuilder builder = Game.newBuilder();
+        try {
+            builder.setRuleSet(null);
+            failForReturn("builder.setRuleSet", "IllegalArgumentException", builder, (Object) null);
+        } catch (IllegalArgumentException e) {
+            assertEquals(RuleSet.CHINESE, builder.getRuleSet());
+        }
+        
+        for (RuleSet rules : RuleSet.values()) {
+            assertEquals(rules, builder.setRuleSet(rules).build().getRuleSet());
+        }
+        assertNotEquals(Game.newBuilder().setRuleSet(RuleSet.JAPANESE), Game.newBuilder());
+    }
+    
+    @Test
+    public void setCheckpointIntervalRejectsIntervalsBelowOne() {
+        GameBuilder builder = Game.newBuilder();
+        assertEquals(1, builder.getCheckpointInterval());
+        for (int interval : new int[] { Integer.MIN_VALUE, -1, 0 }) {
+            try {
+                builder.setCheckpointInterval(interval);
+                failForReturn("builder.setCheckpointInterval", "IllegalArgumentException", builder, interval);
+            } catch (IllegalArgumentException e) {
+                assertEquals(1, builder.getCheckpointInterval());
+            }
+        }
+        assertEquals(16, builder.setCheckpointInterval(16).getCheckpointInterval());
+    }
 }
@@ -10,9 +10,11 @@ import static com.sadakatsu.util.TestHelper.*;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Test;
@@ -20,6 +22,7 @@ import org.junit.Test;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.sadakatsu.go.domain.Game.GameBuilder;
+import com.sadakatsu.go.domain.exceptions.IllegalMoveException;
 import com.sadakatsu.go.domain.intersection.Intersection;
 
 public class GameTest {
@@ -275,6 +278,15 @@ private static final int[] VALID_DIMENSIONS = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 1
         }
     }
     
+    @Test
+    public void getHandicapStonePlacementsReturnsAModifiableCopy() {
+        Game game = Game.newBuilder().addHandicapStone(Coordinate.C04_R04).build();
+        Set<Coordinate> stones = game.getHandicapStonePlacements();
+        stones.add(null);
+        stones.remove(Coordinate.C04_R04);
+        assertEquals(Collections.singleton(Coordinate.C04_R04), game.getHandicapStonePlacements());
+    }
+    
     //==================================================================================================================
     // It is good to be able to create Games, but the point of the Game is to be able to play.  However, if AIs are to
     // be able to use this class to read out move trees, a Game instance needs to be immutable.
@@ -748,4 +760,315 @@ private static final int[] VALID_DIMENSIONS = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 1
             ensureGameDoesNotPermitPlay(game, expected, "completeButUnscored");
         }
     }
+    
+    @Test
+    public void movesAreValidatedTheSameWayWhetherOrNotTheBoardHasBeenMarked() {
+        Random random = new Random(20161017L);
+        for (RuleSet rules : RuleSet.values()) {
+            for (int dimension : new int[] { 2, 3, 4, 5, 9 }) {
+                Game marked = Game.newBuilder(dimension).setRuleSet(rules).build();
+                Game unmarked = Game.newBuilder(dimension).setRuleSet(rules).build();
+                for (int moves = 0; moves < dimension * dimension * 3 && !marked.isOver(); ++moves) {
+                    Set<Move> legal = marked.getLegalMoves();
+                    for (int index = 0; index < dimension * dimension; ++index) {
+                        Coordinate coordinate = Coordinate.fromIndex(index, dimension);
+                        boolean accepted = true;
+                        try {
+                            unmarked.play(coordinate);
+                        } catch (IllegalArgumentException e) {
+                            accepted = false;
+                        }
+                        assertEquals(legal.contains(coordinate), accepted);
+                    }
+                    
+                    Object[] choices = legal.toArray();
+                    Move move = (Move) choices[random.nextInt(choices.length)];
+                    marked = marked.play(move);
+                    unmarked = unmarked.play(move);
+                }
+                assertEquals(marked, unmarked);
+            }
+        }
+    }
+    
+    @Test
+    public void replayingASequenceProducesTheSameGameAsPlayingEachMove() {
+        Move[] moves = Arrays.copyOf(TRIPLE_KO_GAME, 153);
+        Game expected = Game.newBuilder().build();
+        for (Move move : moves) {
+            expected = expected.play(move);
+        }
+        
+        assertEquals(expected, Game.newBuilder().build().replay(moves));
+        assertEquals(expected, Game.newBuilder().build().playAll(Arrays.asList(moves)));
+    }
+    
+    @Test
+    public void replayingLeavesEveryStateItKeepsUnchanged() {
+        Move[] moves = Arrays.copyOf(TRIPLE_KO_GAME, 62);
+        moves[60] = PASS;
+        moves[61] = PASS;
+        for (int interval : new int[] { 1, 2, 7 }) {
+            Game expected = Game.newBuilder().setCheckpointInterval(interval).build();
+            for (Move move : moves) {
+                expected = expected.play(move);
+            }
+            
+            Game actual = Game.newBuilder().setCheckpointInterval(interval).build().replay(moves);
+            while (expected != null) {
+                assertEquals(expected, actual);
+                for (Coordinate coordinate : Coordinate.iterateOverBoard()) {
+                    assertEquals(expected.get(coordinate), actual.get(coordinate));
+                }
+                expected = expected.getMovesPlayed() > 0 ? expected.getPreviousState() : null;
+                actual = actual.getMovesPlayed() > 0 ? actual.getPreviousState() : null;
+            }
+        }
+    }
+    
+    @Test
+    public void replayReportsTheFirstIllegalMove() {
+        Move[][] sequences = {
+            { C01_R01, C01_R01 },
+            { C02_R01, PASS, C01_R02, C01_R01 },
+            { PASS, PASS, C01_R01 },
+            { C02_R01, C03_R01, C01_R02, C02_R02, C05_R05, C01_R01, C02_R01, C04_R04 },
+            { C10_R01 }
+        };
+        int[] expectedIndices = { 1, 3, 2, 6, 0 };
+        for (int i = 0; i < sequences.length; ++i) {
+            try {
+                Game wrong = Game.newBuilder(9).build().replay(sequences[i]);
+                failForReturn("game.replay", "IllegalMoveException", wrong, (Object[]) sequences[i]);
+            } catch (IllegalMoveException e) {
+                assertEquals(expectedIndices[i], e.getIndex());
+                assertEquals(sequences[i][expectedIndices[i]], e.getMove());
+            }
+        }
+    }
+    
+    @Test
+    public void primitiveMoveGeneratorsAgreeWithGetLegalMoves() {
+        Random random = new Random(20161017L);
+        int[] indices = new int[361];
+        long[] mask = new long[Game.LEGAL_MOVE_MASK_WORDS];
+        for (int dimension : new int[] { 1, 2, 5, 9, 19 }) {
+            Game game = Game.newBuilder(dimension).build();
+            while (!game.isOver()) {
+                Set<Move> expected = game.getLegalMoves();
+                
+                Set<Move> fromIndices = new HashSet<>();
+                int count = game.getLegalMoveIndices(indices);
+                for (int i = 0; i < count; ++i) {
+                    fromIndices.add(Coordinate.fromIndex(indices[i], dimension));
+                }
+                
+                Set<Move> fromMask = new HashSet<>();
+                game.getLegalMoveMask(mask);
+                for (int index = 0; index < dimension * dimension; ++index) {
+                    if ((mask[index / 64] & 1L << index % 64) != 0) {
+                        fromMask.add(Coordinate.fromIndex(index, dimension));
+                    }
+                }
+                
+                assertTrue(game.isPassLegal());
+                fromIndices.add(PASS);
+                fromMask.add(PASS);
+                assertEquals(expected, fromIndices);
+                assertEquals(expected, fromMask);
+                
+                Object[] choices = expected.toArray();
+                game = game.play((Move) choices[random.nextInt(choices.length)]);
+            }
+            
+            assertFalse(game.isPassLegal());
+            assertEquals(0, game.getLegalMoveIndices(indices));
+            game.getLegalMoveMask(mask);
+            assertArrayEquals(new long[Game.LEGAL_MOVE_MASK_WORDS], mask);
+        }
+    }
+    
+    @Test
+    public void primitiveMoveGeneratorsRejectShortArrays() {
+        Game game = Game.newBuilder().build();
+        try {
+            int wrong = game.getLegalMoveIndices(new int[360]);
+            failForReturn("game.getLegalMoveIndices", "IllegalArgumentException", wrong, "int[360]");
+        } catch (IllegalArgumentException e) {
+            // success
+        }
+        
+        try {
+            game.getLegalMoveMask(new long[Game.LEGAL_MOVE_MASK_WORDS - 1]);
+            failForReturn("game.getLegalMoveMask", "IllegalArgumentException", null, "a short long[]");
+        } catch (IllegalArgumentException e) {
+            // success
+        }
+    }
+    
+    @Test
+    public void isLegalAgreesWithGetLegalMoves() {
+        Random random = new Random(20161017L);
+        for (int dimension : new int[] { 1, 2, 5, 9, 19 }) {
+            Game game = Game.newBuilder(dimension).build();
+            while (!game.isOver()) {
+                Set<Move> expected = game.getLegalMoves();
+                for (Coordinate coordinate : Coordinate.iterateOverBoard()) {
+                    boolean onBoard = coordinate.getColumn() <= dimension && coordinate.getRow() <= dimension;
+                    assertEquals(expected.contains(coordinate), game.isLegal(coordinate));
+                    if (onBoard) {
+                        assertEquals(expected.contains(coordinate), game.isLegal(coordinate.toIndex(dimension)));
+                    }
+                }
+                assertTrue(game.isLegal(PASS));
+                assertFalse(game.isLegal(null));
+                assertFalse(game.isLegal(-1));
+                assertFalse(game.isLegal(dimension * dimension));
+                
+                Object[] choices = expected.toArray();
+                game = game.play((Move) choices[random.nextInt(choices.length)]);
+            }
+            
+            assertFalse(game.isLegal(PASS));
+            for (int index = 0; index < dimension * dimension; ++index) {
+                assertFalse(game.isLegal(index));
+            }
+        }
+    }
+    
+    @Test
+    public void equalsAndHashCodeDoNotRecurseThroughTheHistory() throws Exception {
+        Random random = new Random(20161017L);
+        List<Move> moves = new ArrayList<>();
+        Game game = Game.newBuilder(9).build();
+        while (!game.isOver() && moves.size() < 2000) {
+            // Passing only when forced keeps the game going long enough to build a deep history.
+            Set<Move> legal = game.getLegalMoves();
+            if (legal.size() > 1) {
+                legal.remove(PASS);
+            }
+            Object[] choices = legal.toArray();
+            Move move = (Move) choices[random.nextInt(choices.length)];
+            moves.add(move);
+            game = game.play(move);
+        }
+        
+        Game first = Game.newBuilder(9).build().playAll(moves);
+        Game second = Game.newBuilder(9).build().playAll(moves);
+        Game shorter = Game.newBuilder(9).build().playAll(moves.subList(0, moves.size() - 1));
+        
+        // A recursive comparison of these histories would overflow so small a stack.
+        boolean[] results = new boolean[3];
+        Thread thread = new Thread(null, () -> {
+            results[0] = first.equals(second);
+            results[1] = first.hashCode() == second.hashCode();
+            results[2] = first.equals(shorter);
+        }, "equals", 1 << 16);
+        thread.start();
+        thread.join();
+        
+        assertTrue(results[0]);
+        assertTrue(results[1]);
+        assertFalse(results[2]);
+    }
+    
+    @Test
+    public void checkpointedGamesRebuildTheSameHistory() {
+        Move[] moves = Arrays.copyOf(TRIPLE_KO_GAME, 153);
+        Game expected = Game.newBuilder().build().replay(moves).play(PASS).play(PASS);
+        for (int interval : new int[] { 1, 2, 7, 50, 1000 }) {
+            Game actual = Game.newBuilder().setCheckpointInterval(interval).build().replay(moves).play(PASS).play(PASS);
+            assertEquals(expected, actual);
+            assertEquals(expected.hashCode(), actual.hashCode());
+            assertEquals(expected.resume(), actual.resume());
+            
+            Game left = expected;
+            Game right = actual;
+            while (left.getMovesPlayed() > 0) {
+                assertEquals(left.getPreviousMove(), right.getPreviousMove());
+                assertEquals(left.getOutcome(), right.getOutcome());
+                for (Coordinate coordinate : Coordinate.iterateOverBoard()) {
+                    assertEquals(left.get(coordinate), right.get(coordinate));
+                }
+                
+                left = left.getPreviousState();
+                right = right.getPreviousState();
+                assertEquals(left, right);
+            }
+        }
+    }
+    
+    @Test
+    public void checkpointedGamesCanContinueFromRebuiltStates() {
+        Move[] moves = Arrays.copyOf(TRIPLE_KO_GAME, 60);
+        Game full = Game.newBuilder().build().replay(moves);
+        Game checkpointed = Game.newBuilder().setCheckpointInterval(8).build().replay(moves);
+        for (int i = 0; i < 13; ++i) {
+            full = full.getPreviousState();
+            checkpointed = checkpointed.getPreviousState();
+        }
+        
+        Move[] variation = { C10_R10, C11_R11, PASS, C12_R12 };
+        assertEquals(full.replay(variation), checkpointed.replay(variation));
+    }
+    
+    @Test
+    public void getStateAtAndGetMoveHistoryMatchTheChainOfPreviousStates() {
+        Move[] moves = Arrays.copyOf(TRIPLE_KO_GAME, 153);
+        for (int interval : new int[] { 1, 3, 16 }) {
+            Game game = Game.newBuilder().setCheckpointInterval(interval).build().replay(moves).play(PASS).play(PASS);
+            Game scored = game.score();
+            
+            List<Move> expectedMoves = new ArrayList<>(Arrays.asList(moves));
+            expectedMoves.add(PASS);
+            expectedMoves.add(PASS);
+            assertEquals(expectedMoves, game.getMoveHistory());
+            assertEquals(expectedMoves, scored.getMoveHistory());
+            
+            assertSame(scored, scored.getStateAt(scored.getMovesPlayed()));
+            Game expected = game;
+            for (int moveNumber = game.getMovesPlayed(); moveNumber >= 0; --moveNumber) {
+                assertEquals(expected, game.getStateAt(moveNumber));
+                if (moveNumber < scored.getMovesPlayed()) {
+                    assertEquals(expected, scored.getStateAt(moveNumber));
+                }
+                assertEquals(expectedMoves.subList(0, moveNumber), game.getStateAt(moveNumber).getMoveHistory());
+                if (moveNumber > 0) {
+                    expected = expected.getPreviousState();
+                }
+            }
+            
+            for (int wrong : new int[] { -1, game.getMovesPlayed() + 1 }) {
+                try {
+                    Game result = game.getStateAt(wrong);
+                    failForReturn("game.getStateAt", "IllegalArgumentException", result, wrong);
+                } catch (IllegalArgumentException e) {
+                    // success
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void getGroupAtReturnsTheGroupHoldingEachIntersection() {
+        Game game = Game.newBuilder().build().replay(Arrays.copyOf(TRIPLE_KO_GAME, 40));
+        Set<Group> groups = game.getAllGroups();
+        for (Coordinate coordinate : Coordinate.iterateOverBoard(19)) {
+            Group group = game.getGroupAt(coordinate);
+            assertTrue(group.members.contains(coordinate));
+            assertTrue(groups.contains(group));
+            assertSame(group, game.getGroupAt(coordinate));
+            assertEquals(group.type == BLACK || group.type == WHITE, game.getGroupsOfStones().contains(group));
+        }
+        
+        Game small = Game.newBuilder(9).build();
+        for (Coordinate wrong : new Coordinate[] { null, C10_R01 }) {
+            try {
+                Group result = small.getGroupAt(wrong);
+                failForReturn("small.getGroupAt", "IllegalArgumentException", result, wrong);
+            } catch (IllegalArgumentException e) {
+                // success
+            }
+        }
+    }
 }
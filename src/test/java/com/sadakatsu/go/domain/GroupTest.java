@@ -259,6 +259,35 @@ public class GroupTest {
         }
     }
     
+    @Test
+    public void groupsWithTheSameMembersAreEqualWhateverBoardTheyCameFrom() {
+        Board small = new Board(9);
+        Board large = new Board(19, BoardLayout.PADDED);
+        for (Board board : new Board[] { small, large }) {
+            board.set(Coordinate.C02_R01, BLACK);
+            board.set(Coordinate.C02_R02, BLACK);
+            board.set(Coordinate.C03_R02, WHITE);
+        }
+        
+        for (Coordinate coordinate : new Coordinate[] { Coordinate.C02_R01, Coordinate.C03_R02 }) {
+            Group a = new Group(small, coordinate);
+            Group b = new Group(large, coordinate);
+            Group c = new Group(new Board(small), coordinate);
+            assertEquals(a, b);
+            assertEquals(b, a);
+            assertEquals(a.hashCode(), b.hashCode());
+            assertEquals(a, c);
+            assertEquals(a.hashCode(), c.hashCode());
+        }
+        
+        large.set(Coordinate.C10_R10, BLACK);
+        Group stones = new Group(small, Coordinate.C02_R01);
+        Group emptyOnSmall = new Group(small, Coordinate.C01_R01);
+        Group emptyOnLarge = new Group(large, Coordinate.C01_R01);
+        assertNotEquals(emptyOnSmall, emptyOnLarge);
+        assertNotEquals(stones, emptyOnSmall);
+    }
+    
     @Test
     public void groupAlwaysReturnsSameHashCode() {
         Board board = buildRandomBoard();
@@ -0,0 +1,43 @@
+package com.sadakatsu.go.domain;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LegalityMapTest {
+    @Test
+    public void updatedMapsMatchMapsComputedFromScratch() {
+        Random random = new Random(20161017L);
+        for (int dimension : new int[] { 2, 3, 5, 9, 13, 19 }) {
+            for (int game = 0; game < 3; ++game) {
+                Board board = new Board(dimension);
+                LegalityMap map = LegalityMap.compute(board);
+                byte player = Board.BLACK_CODE;
+                for (int moves = 0; moves < dimension * dimension * 3; ++moves) {
+                    int index = random.nextInt(dimension * dimension);
+                    if (
+                        Board.countsAsLiberty(board.getCode(index)) &&
+                        !BitBoard.contains(map.getSelfCaptures(player), index)
+                    ) {
+                        ScratchArena arena = ScratchArena.get();
+                        arena.play(board, index, player);
+                        long[] changed = Arrays.copyOf(arena.getCaptured(), BitBoard.WORDS);
+                        BitBoard.add(changed, index);
+                        
+                        map = map.update(board, changed);
+                        LegalityMap expected = LegalityMap.compute(board);
+                        for (byte code = Board.BLACK_CODE; code <= Board.WHITE_CODE; ++code) {
+                            assertArrayEquals(expected.getSelfCaptures(code), map.getSelfCaptures(code));
+                            assertArrayEquals(expected.getCaptures(code), map.getCaptures(code));
+                        }
+                        
+                        player = player == Board.BLACK_CODE ? Board.WHITE_CODE : Board.BLACK_CODE;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.sadakatsu.go.domain;
+
+import static com.sadakatsu.go.domain.Coordinate.*;
+import static com.sadakatsu.go.domain.intersection.Stone.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PositionHistoryTest {
+    @Test
+    public void addingAPositionLeavesTheOriginalHistoryUnchanged() {
+        Board empty = new Board(9);
+        Board oneStone = new Board(empty);
+        oneStone.set(C05_R05, BLACK);
+        
+        PositionHistory before = PositionHistory.EMPTY.add(empty);
+        PositionHistory after = before.add(oneStone);
+        
+        assertTrue(before.contains(new Board(9)));
+        assertFalse(before.contains(oneStone));
+        assertFalse(before.containsKey(oneStone.zobrist()));
+        assertTrue(after.contains(oneStone));
+        assertTrue(after.containsKey(oneStone.zobrist()));
+        assertFalse(PositionHistory.EMPTY.contains(empty));
+        assertEquals(0, PositionHistory.EMPTY.size());
+        assertEquals(1, before.size());
+        assertEquals(2, after.size());
+    }
+    
+    @Test
+    public void variationsFromTheSameHistoryDoNotSeeEachOther() {
+        Board empty = new Board(9);
+        Board black = new Board(empty);
+        black.set(C05_R05, BLACK);
+        Board white = new Board(empty);
+        white.set(C05_R05, WHITE);
+        
+        PositionHistory root = PositionHistory.EMPTY.add(empty);
+        PositionHistory main = root.add(black);
+        PositionHistory variation = root.add(white);
+        
+        assertTrue(main.contains(black));
+        assertFalse(main.contains(white));
+        assertTrue(variation.contains(white));
+        assertFalse(variation.contains(black));
+        assertTrue(variation.contains(empty));
+        assertEquals(2, main.size());
+        assertEquals(2, variation.size());
+    }
+    
+    @Test
+    public void manyPositionsCanBeRecordedAndFound() {
+        List<Board> boards = new ArrayList<>();
+        List<PositionHistory> histories = new ArrayList<>();
+        PositionHistory history = PositionHistory.EMPTY;
+        Board board = new Board(19);
+        for (Coordinate coordinate : Coordinate.iterateOverBoard(19)) {
+            board = new Board(board);
+            board.set(coordinate, coordinate.getColumn() % 2 == 0 ? BLACK : WHITE);
+            history = history.add(board);
+            boards.add(board);
+            histories.add(history);
+        }
+        
+        for (int i = 0; i < boards.size(); ++i) {
+            assertTrue(history.contains(new Board(boards.get(i))));
+            assertTrue(histories.get(i).contains(boards.get(i)));
+            if (i + 1 < boards.size()) {
+                assertFalse(histories.get(i).contains(boards.get(i + 1)));
+            }
+        }
+        assertEquals(boards.size(), history.size());
+    }
+    
+    @Test
+    public void aHistoryDoesNotDependOnTheBoardsThatWereAdded() {
+        Board board = new Board(9);
+        board.set(C03_R03, BLACK);
+        board.set(C07_R07, WHITE);
+        PositionHistory history = PositionHistory.EMPTY.add(board);
+        
+        Board same = new Board(9, BoardLayout.PADDED, BoardStorage.CHUNKED);
+        same.set(C07_R07, WHITE);
+        same.set(C03_R03, BLACK);
+        board.set(C03_R03, WHITE);
+        
+        assertTrue(history.contains(same));
+        assertFalse(history.contains(board));
+    }
+}
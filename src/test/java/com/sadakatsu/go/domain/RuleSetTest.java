@@ -0,0 +1,135 @@
+package com.sadakatsu.go.domain;
+
+import static com.sadakatsu.go.domain.Coordinate.*;
+import static com.sadakatsu.go.domain.Pass.PASS;
+import static com.sadakatsu.go.domain.intersection.Empty.EMPTY;
+import static com.sadakatsu.go.domain.intersection.Stone.*;
+import static com.sadakatsu.go.domain.intersection.TemporarilyUnplayable.TEMPORARILY_UNPLAYABLE;
+import static com.sadakatsu.util.TestHelper.*;
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.sadakatsu.go.domain.exceptions.IllegalMoveException;
+import com.sadakatsu.go.domain.outcome.Outcome;
+
+public class RuleSetTest {
+    // White's stone at C02_R02 is captured by Black's C03_R02, which can then be retaken only after a move elsewhere.
+    private static final Move[] KO = {
+        C02_R01, C03_R01, C01_R02, C04_R02, C02_R03, C03_R03, C05_R05, C02_R02, C03_R02
+    };
+    
+    // Black's last move fills its own chain's last liberty without capturing anything.
+    private static final Move[] MULTI_STONE_SUICIDE = { C01_R01, C02_R01, C05_R05, C02_R02, C05_R04, C01_R03 };
+    private static final Move[] SINGLE_STONE_SUICIDE = { C05_R05, C02_R01, C05_R04, C01_R02 };
+    
+    // Black walls off the first column and White the fifth, leaving the third column as dame.
+    private static final Move[] WALLS = {
+        C02_R01, C04_R01, C02_R02, C04_R02, C02_R03, C04_R03, C02_R04, C04_R04, C02_R05, C04_R05, PASS, PASS
+    };
+    
+    private static Game build( RuleSet rules ) {
+        return Game.newBuilder(5).setRuleSet(rules).build();
+    }
+    
+    @Test
+    public void everyRuleSetForbidsRetakingAKoImmediately() {
+        for (RuleSet rules : RuleSet.values()) {
+            Game game = build(rules).replay(KO);
+            assertEquals(TEMPORARILY_UNPLAYABLE, game.get(C02_R02));
+            
+            try {
+                Game wrong = build(rules).replay(KO).play(C02_R02);
+                failForReturn("game.play", "IllegalArgumentException", wrong, C02_R02);
+            } catch (IllegalArgumentException e) {
+                // success
+            }
+            
+            Game afterThreats = game.play(C05_R01).play(C01_R05);
+            assertEquals(EMPTY, afterThreats.get(C02_R02));
+            Game retaken = afterThreats.play(C02_R02);
+            assertEquals(WHITE, retaken.get(C02_R02));
+            assertEquals(TEMPORARILY_UNPLAYABLE, retaken.get(C03_R02));
+        }
+    }
+    
+    @Test
+    public void simpleKoRuleSetsKeepNoPositionHistory() {
+        for (RuleSet rules : new RuleSet[] { RuleSet.JAPANESE, RuleSet.SIMPLE_KO }) {
+            Game game = build(rules).replay(KO);
+            assertSame(PositionHistory.EMPTY, game.getPositionHistory());
+        }
+        assertEquals(KO.length + 1, build(RuleSet.CHINESE).replay(KO).getPositionHistory().size());
+    }
+    
+    @Test
+    public void onlyTrompTaylorAllowsMultiStoneSuicide() {
+        for (RuleSet rules : RuleSet.values()) {
+            Game game = build(rules).replay(MULTI_STONE_SUICIDE);
+            if (rules == RuleSet.TROMP_TAYLOR) {
+                assertEquals(EMPTY, game.get(C01_R02));
+                
+                Game next = build(rules).replay(MULTI_STONE_SUICIDE).play(C01_R02);
+                assertEquals(EMPTY, next.get(C01_R01));
+                assertEquals(EMPTY, next.get(C01_R02));
+                assertEquals(next, game.replay(C01_R02));
+            } else {
+                assertEquals(TEMPORARILY_UNPLAYABLE, game.get(C01_R02));
+            }
+        }
+    }
+    
+    @Test
+    public void noRuleSetAllowsSingleStoneSuicide() {
+        for (RuleSet rules : RuleSet.values()) {
+            assertEquals(TEMPORARILY_UNPLAYABLE, build(rules).replay(SINGLE_STONE_SUICIDE).get(C01_R01));
+            try {
+                Game wrong = build(rules).replay(SINGLE_STONE_SUICIDE).replay(C01_R01);
+                failForReturn("game.replay", "IllegalMoveException", wrong, C01_R01);
+            } catch (IllegalMoveException e) {
+                assertEquals(0, e.getIndex());
+            }
+        }
+    }
+    
+    @Test
+    public void territoryScoringCountsNeitherStonesNorDame() {
+        Outcome area = build(RuleSet.CHINESE).replay(WALLS).score().getOutcome();
+        assertEquals(12.5, area.getBlackPointsOnBoard(), 0.);
+        assertEquals(12.5, area.getWhitePointsOnBoard(), 0.);
+        
+        Outcome territory = build(RuleSet.JAPANESE).replay(WALLS).score().getOutcome();
+        assertEquals(5., territory.getBlackPointsOnBoard(), 0.);
+        assertEquals(5., territory.getWhitePointsOnBoard(), 0.);
+        assertEquals(WHITE, territory.getWinner());
+    }
+    
+    @Test
+    public void territoryScoringCountsDeadStonesAsCaptures() {
+        Game game = build(RuleSet.JAPANESE).replay(C02_R01, C04_R01, C02_R02, C04_R02, C02_R03, C04_R03, C02_R04,
+            C04_R04, C02_R05, C04_R05, C05_R03, PASS, PASS);
+        Group dead = null;
+        for (Group group : game.getGroupsOfStones()) {
+            if (group.members.contains(C05_R03)) {
+                dead = group;
+            }
+        }
+        
+        Outcome outcome = game.score(Collections.singleton(dead)).getOutcome();
+        assertEquals(6., outcome.getWhitePointsOnBoard(), 0.);
+    }
+    
+    @Test
+    public void trompTaylorRejectsDeadGroups() {
+        Game game = build(RuleSet.TROMP_TAYLOR).replay(C03_R03, PASS, PASS);
+        Group group = game.getGroupsOfStones().iterator().next();
+        try {
+            Game wrong = game.score(Collections.singleton(group));
+            failForReturn("game.score", "IllegalArgumentException", wrong, group);
+        } catch (IllegalArgumentException e) {
+            // success
+        }
+    }
+}
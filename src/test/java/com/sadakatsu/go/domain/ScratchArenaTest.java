@@ -0,0 +1,59 @@
+package com.sadakatsu.go.domain;
+
+import static com.sadakatsu.go.domain.Coordinate.*;
+import static com.sadakatsu.go.domain.intersection.Stone.*;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ScratchArenaTest {
+    @Test
+    public void undoRestoresTheBoardAfterEveryTrialMove() {
+        Random random = new Random(20161017L);
+        for (int dimension : new int[] { 1, 2, 5, 9, 19 }) {
+            Game game = Game.newBuilder(dimension).build();
+            for (int moves = 0; moves < dimension * dimension * 2 && !game.isOver(); ++moves) {
+                Board board = new Board(game.getBoard());
+                Board expected = new Board(board);
+                ScratchArena arena = ScratchArena.get();
+                for (int index = 0; index < dimension * dimension; ++index) {
+                    if (Board.countsAsLiberty(board.getCode(index))) {
+                        arena.play(board, index, Board.BLACK_CODE);
+                        arena.hasLiberty(board, index);
+                        arena.undo(board);
+                        assertEquals(expected, board);
+                        assertEquals(expected.zobrist(), board.zobrist());
+                    }
+                }
+                
+                Object[] legal = game.getLegalMoves().toArray();
+                game = game.play((Move) legal[random.nextInt(legal.length)]);
+            }
+        }
+    }
+    
+    @Test
+    public void playRemovesEveryCapturedChain() {
+        Board board = new Board(3);
+        board.set(C02_R01, WHITE);
+        board.set(C01_R02, WHITE);
+        board.set(C03_R02, WHITE);
+        board.set(C02_R03, WHITE);
+        board.set(C01_R01, BLACK);
+        board.set(C03_R01, BLACK);
+        board.set(C01_R03, BLACK);
+        board.set(C03_R03, BLACK);
+        
+        ScratchArena arena = ScratchArena.get();
+        int index = board.indexOf(C02_R02);
+        assertEquals(4, arena.play(board, index, Board.BLACK_CODE));
+        assertEquals(5, board.countNonEmptyIntersections());
+        assertTrue(arena.hasLiberty(board, index));
+        
+        arena.undo(board);
+        assertEquals(8, board.countNonEmptyIntersections());
+        assertEquals(WHITE, board.get(C02_R01));
+    }
+}
@@ -0,0 +1,180 @@
+package com.sadakatsu.go.domain;
+
+import static com.sadakatsu.go.domain.Coordinate.*;
+import static com.sadakatsu.go.domain.Pass.PASS;
+import static com.sadakatsu.go.domain.intersection.Empty.EMPTY;
+import static com.sadakatsu.go.domain.intersection.Stone.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.sadakatsu.go.domain.intersection.Intersection;
+
+public class SearchBoardTest {
+    private static final int[] DIMENSIONS = { 1, 2, 3, 4, 5, 7, 9 };
+    
+    @Test
+    public void makeAcceptsExactlyTheMovesThatGameAccepts() {
+        for (RuleSet rules : RuleSet.values()) {
+            for (int dimension : DIMENSIONS) {
+                for (int seed = 0; seed < 10; ++seed) {
+                    Random random = new Random(seed * 19 + dimension);
+                    Game game = Game.newBuilder(dimension).setRuleSet(rules).build();
+                    SearchBoard search = new SearchBoard(game);
+                
+                    while (!game.isOver()) {
+                        List<Move> legal = new ArrayList<>();
+                        for (Coordinate coordinate : Coordinate.iterateOverBoard(dimension)) {
+                            long before = search.zobrist();
+                            boolean made = search.make(coordinate);
+                            assertEquals(rules + " " + game + " @ " + coordinate, EMPTY == game.get(coordinate), made);
+                            if (made) {
+                                legal.add(coordinate);
+                                search.unmake();
+                            }
+                            assertEquals(before, search.zobrist());
+                        }
+                    
+                        Move move = PASS;
+                        if (!legal.isEmpty() && random.nextInt(12) > 0) {
+                            move = legal.get(random.nextInt(legal.size()));
+                        }
+                        game = game.play(move);
+                        assertTrue(search.make(move));
+                        assertSamePosition(game, search);
+                    }
+                
+                    assertTrue(search.isOver());
+                    assertEquals(game, search.toGame());
+                }
+            }
+        }
+    }
+    
+    private void assertSamePosition( Game game, SearchBoard search ) {
+        for (Coordinate coordinate : Coordinate.iterateOverBoard(game.getDimension())) {
+            Intersection expected = game.get(coordinate);
+            Intersection actual = search.get(coordinate);
+            if (expected.countsAsLiberty()) {
+                assertEquals(EMPTY, actual);
+            } else {
+                assertEquals(expected, actual);
+            }
+        }
+        assertEquals(game.getCapturesFor(BLACK), search.getCapturesFor(BLACK));
+        assertEquals(game.getCapturesFor(WHITE), search.getCapturesFor(WHITE));
+        if (!game.isOver()) {
+            assertEquals(game.getCurrentPlayer(), search.getCurrentPlayer());
+        }
+    }
+    
+    @Test
+    public void unmakeRestoresEveryEarlierState() {
+        for (RuleSet rules : RuleSet.values()) {
+            Random random = new Random(7);
+            List<Game> states = new ArrayList<>();
+            Game game = Game.newBuilder(5).setRuleSet(rules).build();
+            SearchBoard search = new SearchBoard(game);
+            while (!game.isOver()) {
+                states.add(game);
+                List<Move> moves = new ArrayList<>(game.getLegalMoves());
+                moves.sort((a, b) -> a.toString().compareTo(b.toString()));
+                Move move = moves.get(random.nextInt(moves.size()));
+                game = game.play(move);
+                assertTrue(search.make(move));
+            }
+        
+            for (int i = states.size() - 1; i >= 0; --i) {
+                search.unmake();
+                assertEquals(i, search.getMovesMade());
+                assertSamePosition(states.get(i), search);
+                assertEquals(states.get(i).getBoard().zobrist(), search.zobrist());
+            }
+        }
+    }
+    
+    @Test
+    public void onlyATrompTaylorSearchBoardAllowsMultiStoneSuicide() {
+        Move[] setUp = { C01_R01, C02_R01, C05_R05, C02_R02, C05_R04, C01_R03 };
+        for (RuleSet rules : RuleSet.values()) {
+            Game game = Game.newBuilder(5).setRuleSet(rules).build().replay(setUp);
+            SearchBoard search = new SearchBoard(game);
+            assertTrue(search.make(C05_R03));
+            assertTrue(search.make(C05_R02));
+            
+            boolean made = search.make(C01_R02);
+            assertEquals(rules == RuleSet.TROMP_TAYLOR, made);
+            if (made) {
+                assertEquals(EMPTY, search.get(C01_R01));
+                assertEquals(EMPTY, search.get(C01_R02));
+                assertEquals(0, search.getCapturesFor(BLACK));
+                assertEquals(0, search.getCapturesFor(WHITE));
+                assertEquals(game.replay(C05_R03, C05_R02, C01_R02), search.toGame());
+                
+                search.unmake();
+                assertEquals(BLACK, search.get(C01_R01));
+                assertEquals(EMPTY, search.get(C01_R02));
+            }
+        }
+    }
+    
+    @Test
+    public void everySearchBoardForbidsRetakingAKoImmediately() {
+        Move[] ko = { C02_R01, C03_R01, C01_R02, C04_R02, C02_R03, C03_R03, C05_R05, C02_R02, C03_R02 };
+        for (RuleSet rules : RuleSet.values()) {
+            Game game = Game.newBuilder(5).setRuleSet(rules).build().replay(ko);
+            SearchBoard search = new SearchBoard(game);
+            assertFalse(search.make(C02_R02));
+            assertTrue(search.make(C05_R01));
+            assertTrue(search.make(C01_R05));
+            assertTrue(search.make(C02_R02));
+            assertFalse(search.make(C03_R02));
+            assertTrue(search.make(PASS));
+            assertTrue(search.make(C05_R03));
+            assertTrue(search.make(C03_R02));
+            assertEquals(game.replay(C05_R01, C01_R05, C02_R02, PASS, C05_R03, C03_R02), search.toGame());
+            
+            search.unmake();
+            search.unmake();
+            search.unmake();
+            assertFalse(search.make(C03_R02));
+        }
+    }
+    
+    @Test
+    public void aSearchBoardCanStartPartwayThroughAGame() {
+        Game game = Game.newBuilder(9).build();
+        Coordinate[] opening = { Coordinate.C03_R03, Coordinate.C07_R07, Coordinate.C03_R07, Coordinate.C07_R03 };
+        for (Coordinate move : opening) {
+            game = game.play(move);
+        }
+        
+        SearchBoard search = new SearchBoard(game);
+        assertFalse(search.make(Coordinate.C03_R03));
+        assertTrue(search.make(Coordinate.C05_R05));
+        assertTrue(search.make(PASS));
+        assertEquals(game.play(Coordinate.C05_R05).play(PASS), search.toGame());
+    }
+    
+    @Test(expected=IllegalStateException.class)
+    public void unmakeThrowsAnExceptionWhenThereIsNothingToUnmake() {
+        new SearchBoard(Game.newBuilder(9).build()).unmake();
+    }
+    
+    @Test(expected=IllegalStateException.class)
+    public void makeThrowsAnExceptionOnceTheGameIsOver() {
+        SearchBoard search = new SearchBoard(Game.newBuilder(9).build());
+        search.make(PASS);
+        search.make(PASS);
+        search.make(PASS);
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void makeThrowsAnExceptionForAnOffBoardCoordinate() {
+        new SearchBoard(Game.newBuilder(9).build()).make(Coordinate.C10_R10);
+    }
+}